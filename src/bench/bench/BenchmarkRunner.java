@@ -0,0 +1,37 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler, which adds the allocation rate to every result, and
+ * writes the results as JSON so a run can be compared against the results of an earlier one.
+ * Every benchmark reports its throughput and, from the sampled times, its p99 latency.
+ */
+public class BenchmarkRunner {
+    private static final String DEFAULT_RESULT_FILE = "bench-results.json";
+
+    /**
+     * Runs the benchmarks
+     *
+     * @param args optionally a regular expression selecting the benchmarks to run (for example
+     *             "PhotoBenchmark.loadImage") and the file to write the results to
+     * @throws RunnerException if a benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "bench\\..*";
+        String resultFile = args.length > 1 ? args[1] : DEFAULT_RESULT_FILE;
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Djava.awt.headless=true")
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
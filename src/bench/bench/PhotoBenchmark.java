@@ -0,0 +1,97 @@
+package bench;
+
+import model.ImageCache;
+import model.Photo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of decoding a photo, creating its thumbnail and loading the stored thumbnail, at
+ * several image sizes. Every operation works on the next photo of a small corpus so the same
+ * decoded pixels are not reused from the CPU caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoBenchmark {
+    private static final int PHOTOS = 8;
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    private Photo[] photos;
+    private int next;
+
+    /**
+     * Generates the corpus and creates the thumbnails, so loadThumbnail has something to load
+     */
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        int[] dimensions = SyntheticCorpus.parseSize(size);
+        String[] names = SyntheticCorpus.generate("photo-" + size, PHOTOS, dimensions[0], dimensions[1]);
+        photos = new Photo[names.length];
+        for (int i = 0; i < names.length; i++) {
+            photos[i] = new Photo(names[i]);
+            photos[i].createThumbnail();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clearCache() {
+        ImageCache.getShared().clear();
+    }
+
+    /**
+     * Full decode of a photo which is not in the image cache, as when opening it
+     */
+    @Benchmark
+    public Image loadImage() {
+        Photo photo = nextPhoto();
+        photo.unloadImage();
+        photo.loadImage();
+        return photo.getImage();
+    }
+
+    /**
+     * Creating and storing the thumbnail of a photo, as when importing it
+     */
+    @Benchmark
+    public Image createThumbnail() {
+        Photo photo = nextPhoto();
+        photo.createThumbnail();
+        return photo.getThumbnail();
+    }
+
+    /**
+     * Reading a stored thumbnail, as when starting the application
+     */
+    @Benchmark
+    public Image loadThumbnail() {
+        Photo photo = nextPhoto();
+        photo.loadThumbnail();
+        return photo.getThumbnail();
+    }
+
+    private Photo nextPhoto() {
+        next = (next + 1) % photos.length;
+        return photos[next];
+    }
+}
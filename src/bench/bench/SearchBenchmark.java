@@ -0,0 +1,101 @@
+package bench;
+
+import model.Photo;
+import model.SearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of searching the names and descriptions of many photos, and of changing a
+ * description. No image files are needed, the photos are never decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+    private static final String[] WORDS = {"beach", "dog", "cat", "sunset", "mountain", "party", "birthday",
+            "snow", "city", "forest", "lake", "family", "holiday", "garden", "river", "bridge"};
+
+    @Param({"10000", "1000000"})
+    public int photos;
+
+    private Photo[] photoArray;
+    private SearchIndex index;
+    private Random random;
+
+    /**
+     * Creates the photos, each named like a camera file and described with three random words
+     */
+    @Setup
+    public void createPhotos() {
+        Date date = new Date();
+        random = new Random(42);
+        photoArray = new Photo[photos];
+        index = new SearchIndex();
+        for (int i = 0; i < photos; i++) {
+            photoArray[i] = new Photo("IMG_" + i, date);
+            photoArray[i].setDescription(randomDescription());
+            index.add(photoArray[i]);
+        }
+    }
+
+    /**
+     * Searches for the number of one photo, as typing a file name would
+     */
+    @Benchmark
+    public List<Photo> searchFileNumber() {
+        return index.search("img " + random.nextInt(photos));
+    }
+
+    /**
+     * Searches for two words which many photos have, so the postings of both are intersected
+     */
+    @Benchmark
+    public List<Photo> searchTwoWords() {
+        return index.search(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+    }
+
+    /**
+     * Searches for a word no photo has
+     */
+    @Benchmark
+    public List<Photo> searchMissingWord() {
+        return index.search("zebra");
+    }
+
+    /**
+     * Changes the description of a photo and indexes it again
+     */
+    @Benchmark
+    public int changeDescription() {
+        Photo photo = photoArray[random.nextInt(photos)];
+        photo.setDescription(randomDescription());
+        index.add(photo);
+        return index.size();
+    }
+
+    /**
+     * Helper method which makes a description of three random words
+     */
+    private String randomDescription() {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " "
+                + WORDS[random.nextInt(WORDS.length)];
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import model.FolderPhotoStorage;
+import model.PhotoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of opening the photo repository, which is what the application does when it starts,
+ * from reading the catalog until every thumbnail worker finished. A warm start finds the catalog and the thumbnails of the previous
+ * start, a cold start has neither and creates every thumbnail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class StartupBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Param({"100", "1000"})
+    public int photos;
+
+    @Param({"warm", "cold"})
+    public String start;
+
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        SyntheticCorpus.clear();
+        names = SyntheticCorpus.generate("startup", photos, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Removes the catalog and the thumbnails before a cold start
+     */
+    @Setup(Level.Invocation)
+    public void prepareStart() throws IOException {
+        if ("cold".equals(start)) {
+            for (String name : names) {
+                Files.deleteIfExists(SyntheticCorpus.thumbnailFile(name));
+            }
+            Files.deleteIfExists(SyntheticCorpus.projectDirectory().resolve("catalog.log"));
+        }
+    }
+
+    @Benchmark
+    public int open() throws InterruptedException {
+        PhotoRepository repository = new PhotoRepository(new FolderPhotoStorage(false));
+        int size = repository.open();
+        repository.close();
+        return size;
+    }
+}
@@ -0,0 +1,152 @@
+package bench;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates jpeg files for the benchmarks. All benchmarks of one JVM share a temporary project
+ * directory, which becomes user.dir so Photo and ImageRepoGUI read and write there instead of the
+ * real photos folder. The images are gradients with random shapes and noise, which compress about
+ * as well as photos do, and are generated from a fixed seed so every run measures the same files.
+ */
+public final class SyntheticCorpus {
+    private static final String IMAGE_TYPE = ".jpg";
+    private static Path projectDirectory;
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * Creates the temporary project directory with its photos and thumbnails folders and makes it
+     * user.dir. Must be called before any Photo is created, as Photo remembers user.dir. The
+     * directory is removed again when the JVM exits.
+     *
+     * @return the temporary project directory
+     * @throws IOException if the directory could not be created
+     */
+    public static synchronized Path projectDirectory() throws IOException {
+        if (projectDirectory == null) {
+            Path directory = Files.createTempDirectory("imagerepo-bench");
+            Files.createDirectories(directory.resolve("photos"));
+            Files.createDirectories(directory.resolve("thumbnails"));
+            System.setProperty("user.dir", directory.toString());
+            projectDirectory = directory;
+            Runtime.getRuntime().addShutdownHook(new Thread(SyntheticCorpus::deleteQuietly));
+        }
+        return projectDirectory;
+    }
+
+    /**
+     * Writes jpeg files into the photos folder of the project directory, files which already exist
+     * are kept
+     *
+     * @param prefix the names of the files are the prefix followed by a number
+     * @param count the number of files
+     * @param width the width of the images
+     * @param height the height of the images
+     * @return the names of the photos, without the extension
+     * @throws IOException if a file could not be written
+     */
+    public static String[] generate(String prefix, int count, int width, int height) throws IOException {
+        Path photos = projectDirectory().resolve("photos");
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = prefix + "-" + i;
+            File file = photos.resolve(names[i] + IMAGE_TYPE).toFile();
+            if (!file.exists() && !ImageIO.write(image(width, height, i), "jpg", file)) {
+                throw new IOException("No jpeg writer available");
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Removes everything in the photos and thumbnails folders and the catalog and thumbnail pack
+     *
+     * @throws IOException if a file could not be deleted
+     */
+    public static void clear() throws IOException {
+        Path directory = projectDirectory();
+        for (String folder : new String[]{"photos", "thumbnails"}) {
+            try (Stream<Path> files = Files.list(directory.resolve(folder))) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.deleteIfExists(directory.resolve("catalog.log"));
+        Files.deleteIfExists(directory.resolve("thumbnails.pack"));
+    }
+
+    /**
+     * Helper method which removes the whole temporary project directory when the JVM exits
+     */
+    private static synchronized void deleteQuietly() {
+        try (Stream<Path> files = Files.walk(projectDirectory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            // it is only a temporary directory
+        }
+    }
+
+    /**
+     * Helper method which returns the thumbnail file of a photo in the project directory
+     */
+    static Path thumbnailFile(String name) throws IOException {
+        return projectDirectory().resolve("thumbnails").resolve(name + IMAGE_TYPE);
+    }
+
+    /**
+     * Helper method which draws one synthetic image
+     */
+    private static BufferedImage image(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), width, height, new Color(random.nextInt())));
+        graphics.fillRect(0, 0, width, height);
+        for (int i = 0; i < 40; i++) {
+            graphics.setColor(new Color(random.nextInt(), true));
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            graphics.fillOval(x, y, 1 + random.nextInt(width / 3 + 1), 1 + random.nextInt(height / 3 + 1));
+        }
+        graphics.dispose();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int rgb = image.getRGB(x, y);
+                int r = clamp(((rgb >> 16) & 0xff) + noise);
+                int g = clamp(((rgb >> 8) & 0xff) + noise);
+                int b = clamp((rgb & 0xff) + noise);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    /**
+     * Parses a size such as "1920x1080"
+     *
+     * @param size the size
+     * @return the width and height
+     */
+    static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+}
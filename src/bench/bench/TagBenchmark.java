@@ -0,0 +1,97 @@
+package bench;
+
+import model.Photo;
+import model.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of adding and removing tags, with tags which are already on many photos. No image
+ * files are needed, the photos are never decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagBenchmark {
+    private static final int TAGS = 50;
+
+    @Param({"1000", "100000"})
+    public int photos;
+
+    private Photo[] photoArray;
+    private Tag[] tags;
+    private int next;
+
+    /**
+     * Creates the photos and puts every tag on every tenth photo
+     */
+    @Setup
+    public void createPhotos() {
+        Date date = new Date();
+        photoArray = new Photo[photos];
+        tags = new Tag[TAGS];
+        for (int i = 0; i < TAGS; i++) {
+            tags[i] = new Tag("tag" + i);
+        }
+        for (int i = 0; i < photos; i++) {
+            photoArray[i] = new Photo("photo" + i, date);
+            if (i % 10 == 0) {
+                for (Tag tag : tags) {
+                    photoArray[i].addTag(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tags a photo and removes the tag again, through the photo
+     */
+    @Benchmark
+    public int addAndRemoveTag() {
+        Photo photo = nextUntaggedPhoto();
+        Tag tag = tags[next % TAGS];
+        photo.addTag(tag);
+        int size = tag.getPhotos().size();
+        photo.removeTag(tag);
+        return size;
+    }
+
+    /**
+     * Tags a photo and removes the tag again, through the tag
+     */
+    @Benchmark
+    public int addAndRemovePhoto() {
+        Photo photo = nextUntaggedPhoto();
+        Tag tag = tags[next % TAGS];
+        tag.addTagToPhoto(photo);
+        int size = photo.getTags().size();
+        tag.removeTagFromPhoto(photo);
+        return size;
+    }
+
+    /**
+     * Helper method which returns the next photo without tags, so every operation really adds
+     * and removes the tag
+     */
+    private Photo nextUntaggedPhoto() {
+        do {
+            next = (next + 1) % photoArray.length;
+        } while (next % 10 == 0);
+        return photoArray[next];
+    }
+}
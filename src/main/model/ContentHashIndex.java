@@ -0,0 +1,75 @@
+package model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index from the content hash of image files to the photo with that content, used to detect
+ * files which are already in the repository when importing. Safe to use from several threads.
+ */
+public class ContentHashIndex {
+    private final ConcurrentMap<String, Photo> photos = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a photo to the index under its content hash, unless another photo already has the hash
+     *
+     * @param photo the photo to add, photos with an unknown hash are ignored
+     * @return the photo which already had the same hash, or null if there was none
+     */
+    public Photo add(Photo photo) {
+        String hash = photo.getContentHash();
+        return hash == null ? null : claim(hash, photo);
+    }
+
+    /**
+     * Claims a hash for a photo which is being imported, before its content hash is set on it.
+     * Claiming is atomic, so of two identical files imported at the same time only one gets the hash.
+     *
+     * @param hash the content hash
+     * @param photo the photo being imported
+     * @return the photo which already had the hash, or null if the hash was claimed for this photo
+     */
+    public Photo claim(String hash, Photo photo) {
+        Photo existing = photos.putIfAbsent(hash, photo);
+        return existing == photo ? null : existing;
+    }
+
+    /**
+     * Gets the photo with a content hash
+     *
+     * @param hash the content hash
+     * @return the photo with the hash or null if there is none
+     */
+    public Photo get(String hash) {
+        return photos.get(hash);
+    }
+
+    /**
+     * Removes a photo from the index
+     *
+     * @param photo the photo to remove
+     */
+    public void remove(Photo photo) {
+        String hash = photo.getContentHash();
+        if (hash != null) {
+            photos.remove(hash, photo);
+        }
+    }
+
+    /**
+     * Removes a hash which was claimed for a photo whose import failed
+     *
+     * @param hash the content hash
+     * @param photo the photo the hash was claimed for
+     */
+    public void release(String hash, Photo photo) {
+        photos.remove(hash, photo);
+    }
+
+    /**
+     * @return the number of hashes in the index
+     */
+    public int size() {
+        return photos.size();
+    }
+}
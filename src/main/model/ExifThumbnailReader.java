@@ -0,0 +1,152 @@
+package model;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads the thumbnail which cameras embed in the EXIF (APP1) segment of a jpeg file. Only the
+ * segments in front of the image data are read, the main image is never decoded.
+ */
+public final class ExifThumbnailReader {
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int TAG_JPEG_OFFSET = 0x0201;
+    private static final int TAG_JPEG_LENGTH = 0x0202;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private ExifThumbnailReader() {
+    }
+
+    /**
+     * Reads the embedded thumbnail of a jpeg file
+     *
+     * @param file the jpeg file
+     * @return the embedded thumbnail or null if the file does not have one
+     * @throws IOException if the file could not be read
+     */
+    public static BufferedImage read(File file) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            byte[] thumbnail = findThumbnail(new DataInputStream(input));
+            return thumbnail == null ? null : ImageIO.read(new ByteArrayInputStream(thumbnail));
+        }
+    }
+
+    /**
+     * Helper method which walks the jpeg segments up to the start of the image data looking for
+     * an EXIF segment with a thumbnail
+     *
+     * @return the bytes of the embedded jpeg thumbnail or null if there is none
+     */
+    private static byte[] findThumbnail(DataInputStream input) throws IOException {
+        try {
+            if (input.readUnsignedByte() != 0xFF || input.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            while (true) {
+                if (input.readUnsignedByte() != 0xFF) {
+                    return null;
+                }
+                int marker = input.readUnsignedByte();
+                while (marker == 0xFF) {
+                    // fill bytes
+                    marker = input.readUnsignedByte();
+                }
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    return null;
+                }
+                int length = input.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return null;
+                }
+                if (marker == MARKER_APP1) {
+                    byte[] segment = new byte[length];
+                    input.readFully(segment);
+                    byte[] thumbnail = parseExifSegment(segment);
+                    if (thumbnail != null) {
+                        return thumbnail;
+                    }
+                } else {
+                    input.skipBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method which finds the thumbnail in an APP1 segment. The thumbnail is described by
+     * the JPEGInterchangeFormat and JPEGInterchangeFormatLength tags of the second image file
+     * directory (IFD1) of the TIFF structure in the segment.
+     *
+     * @param segment the contents of the APP1 segment
+     * @return the bytes of the embedded jpeg thumbnail or null if there is none
+     */
+    private static byte[] parseExifSegment(byte[] segment) {
+        if (segment.length < EXIF_HEADER.length + 8) {
+            return null;
+        }
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (segment[i] != EXIF_HEADER[i]) {
+                return null;
+            }
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(segment, EXIF_HEADER.length, segment.length - EXIF_HEADER.length).slice();
+        if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+            return null;
+        }
+        try {
+            int ifd0 = tiff.getInt(4);
+            int ifd0Entries = tiff.getShort(ifd0) & 0xFFFF;
+            int ifd1 = tiff.getInt(ifd0 + 2 + ifd0Entries * 12);
+            if (ifd1 <= 0) {
+                return null;
+            }
+            int ifd1Entries = tiff.getShort(ifd1) & 0xFFFF;
+            int offset = -1;
+            int length = -1;
+            for (int i = 0; i < ifd1Entries; i++) {
+                int entry = ifd1 + 2 + i * 12;
+                int tag = tiff.getShort(entry) & 0xFFFF;
+                if (tag == TAG_JPEG_OFFSET) {
+                    offset = readLongValue(tiff, entry);
+                } else if (tag == TAG_JPEG_LENGTH) {
+                    length = readLongValue(tiff, entry);
+                }
+            }
+            // compared without adding them, so huge values from a corrupt directory cannot overflow
+            if (offset <= 0 || length <= 0 || offset > tiff.limit() || length > tiff.limit() - offset) {
+                return null;
+            }
+            byte[] thumbnail = new byte[length];
+            tiff.position(offset);
+            tiff.get(thumbnail);
+            return thumbnail;
+        } catch (IndexOutOfBoundsException e) {
+            // malformed EXIF data, treat as if there was no thumbnail
+            return null;
+        }
+    }
+
+    /**
+     * Helper method which reads the value of an IFD entry of type SHORT or LONG
+     */
+    private static int readLongValue(ByteBuffer tiff, int entry) {
+        int type = tiff.getShort(entry + 2) & 0xFFFF;
+        return type == 3 ? tiff.getShort(entry + 8) & 0xFFFF : tiff.getInt(entry + 8);
+    }
+}
@@ -0,0 +1,179 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores the photos in the photos folder and their thumbnails in the thumbnails folder (or the
+ * thumbnail pack) of the project directory, and their metadata in the catalog next to them. The
+ * folders are flat or sharded, whichever layout the project directory is in (see PhotoPaths).
+ */
+public class FolderPhotoStorage implements PhotoStorage {
+    private final PhotoPaths paths;
+    private final PhotoCatalog catalog;
+    private final ThumbnailPack thumbnailPack;
+    private volatile boolean catalogAvailable = true;
+    private volatile Set<String> thumbnailNames = Collections.emptySet();
+
+    /**
+     * Constructor for the storage in the project directory (user.dir), which is where Photo reads
+     * the image files from
+     *
+     * @param useThumbnailPack whether to store the thumbnails in the thumbnail pack instead of
+     *                         the thumbnails folder
+     */
+    public FolderPhotoStorage(boolean useThumbnailPack) {
+        Path projectDirectory = Paths.get(System.getProperty("user.dir"));
+        paths = PhotoPaths.detect(projectDirectory);
+        Photo.setPaths(paths);
+        catalog = new PhotoCatalog(projectDirectory.resolve("catalog.log"));
+        thumbnailPack = useThumbnailPack ? openThumbnailPack(projectDirectory.resolve("thumbnails.pack")) : null;
+        Photo.setThumbnailPack(thumbnailPack);
+    }
+
+    @Override
+    public PhotoPaths getPaths() {
+        return paths;
+    }
+
+    /**
+     * Lists the jpeg files in the photos folder, and remembers which thumbnails are in the
+     * thumbnails folder so hasThumbnail does not have to look at the folder for every photo
+     */
+    @Override
+    public List<String> listPhotoNames() {
+        Set<String> thumbnails = new HashSet<>();
+        for (Path folder : paths.thumbnailFolders()) {
+            for (File thumbnailFile : listFilesOrEmpty(folder)) {
+                // skips the folders of the larger thumbnail sizes
+                if (ImportPipeline.isJpegFile(thumbnailFile.toPath())) {
+                    thumbnails.add(stripExtension(thumbnailFile.getName()));
+                }
+            }
+        }
+        thumbnailNames = thumbnails;
+
+        List<String> names = new ArrayList<>();
+        for (Path folder : paths.imageFolders()) {
+            for (File imageFile : listFilesOrEmpty(folder)) {
+                // skips files which are not photos, such as imports which are still being copied
+                if (ImportPipeline.isJpegFile(imageFile.toPath())) {
+                    names.add(stripExtension(imageFile.getName()));
+                }
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public boolean hasThumbnail(String name) {
+        return thumbnailNames.contains(name) || (thumbnailPack != null && thumbnailPack.contains(name));
+    }
+
+    @Override
+    public boolean delete(Photo photo) {
+        Metrics.Sample sample = Metrics.DELETE.start(photo.getName());
+        File photoFile = paths.imageFile(photo.getName()).toFile();
+        boolean deleted = photoFile.delete();
+        if (deleted) {
+            // photos which could not be decoded, or whose thumbnail is not created yet, have none
+            photo.deleteThumbnail();
+            sample.stop();
+        } else {
+            sample.fail("could not delete " + photoFile);
+        }
+        return deleted;
+    }
+
+    @Override
+    public Map<String, Photo> loadMetadata() {
+        try {
+            return catalog.load();
+        } catch (IOException e) {
+            // start without the catalog, the photos are still listed from the photos folder
+            catalogAvailable = false;
+            return new HashMap<>();
+        }
+    }
+
+    @Override
+    public void storeMetadata(List<Photo> photos) {
+        if (catalogAvailable) {
+            try {
+                catalog.putAll(photos);
+            } catch (IOException e) {
+                // the photos are catalogued again on the next start as their files look new
+            }
+        }
+    }
+
+    @Override
+    public void removeMetadata(String name) {
+        if (catalogAvailable) {
+            try {
+                catalog.remove(name);
+            } catch (IOException e) {
+                // the photo is removed on the next start as its file is gone
+            }
+        }
+    }
+
+    /**
+     * Closes the catalog and the thumbnail pack
+     *
+     * @throws IOException if they could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        catalog.close();
+        if (thumbnailPack != null) {
+            Photo.setThumbnailPack(null);
+            thumbnailPack.close();
+        }
+    }
+
+    /**
+     * Helper method which opens the thumbnail pack
+     *
+     * @return the thumbnail pack or null to fall back to the thumbnails folder
+     */
+    private static ThumbnailPack openThumbnailPack(Path file) {
+        try {
+            return new ThumbnailPack(file);
+        } catch (IOException e) {
+            // fall back to the thumbnails folder
+            return null;
+        }
+    }
+
+    /**
+     * Helper method which lists the files of a directory
+     *
+     * @param directory the directory
+     * @return the files in the directory or an empty array if the directory could not be read
+     */
+    private static File[] listFilesOrEmpty(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Helper method which removes the file extension from a file name
+     *
+     * @param fileName the name of the file
+     * @return the file name without its extension
+     */
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
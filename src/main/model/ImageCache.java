@@ -0,0 +1,206 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache for decoded images which is bounded by the number of bytes the decoded images take up
+ * on the heap (width x height x bytes per pixel). When the budget is exceeded the least recently
+ * used images are evicted first. A single shared cache is used by all photos, its budget can be
+ * configured with the imagerepo.imageCacheBytes system property or with setMaxBytes. Thumbnails
+ * have a cache of their own (imagerepo.thumbnailCacheBytes), so opening large images does not
+ * push out the thumbnails which are on screen.
+ */
+public class ImageCache {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_THUMBNAIL_MAX_BYTES = 32L * 1024 * 1024;
+    private static final ImageCache SHARED = new ImageCache(
+            Long.getLong("imagerepo.imageCacheBytes", DEFAULT_MAX_BYTES));
+    private static final ImageCache THUMBNAILS = new ImageCache(
+            Long.getLong("imagerepo.thumbnailCacheBytes", DEFAULT_THUMBNAIL_MAX_BYTES));
+
+    static {
+        SHARED.registerGauges("imageCache");
+        THUMBNAILS.registerGauges("thumbnailCache");
+    }
+
+    // access ordered, so iteration starts at the least recently used image
+    private final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long currentBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor for an image cache
+     *
+     * @param maxBytes the maximum number of bytes the cached images can take up
+     */
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by all photos
+     */
+    public static ImageCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the cache of the thumbnails of all photos
+     */
+    public static ImageCache getThumbnails() {
+        return THUMBNAILS;
+    }
+
+    /**
+     * Gets an image from the cache and marks it as the most recently used
+     *
+     * @param key the key of the image
+     * @return the cached image or null if it is not in the cache
+     */
+    public synchronized BufferedImage get(String key) {
+        BufferedImage image = images.get(key);
+        if (image == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return image;
+    }
+
+    /**
+     * Adds an image to the cache, evicting the least recently used images if the cache is over
+     * its budget. Images larger than the whole budget are not cached.
+     *
+     * @param key the key of the image
+     * @param image the decoded image
+     */
+    public synchronized void put(String key, BufferedImage image) {
+        long weight = weigh(image);
+        if (weight > maxBytes) {
+            return;
+        }
+        BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            currentBytes -= weigh(previous);
+        }
+        currentBytes += weight;
+        evict();
+    }
+
+    /**
+     * Removes an image from the cache
+     *
+     * @param key the key of the image
+     */
+    public synchronized void invalidate(String key) {
+        BufferedImage removed = images.remove(key);
+        if (removed != null) {
+            currentBytes -= weigh(removed);
+        }
+    }
+
+    /**
+     * Removes all images whose key starts with the given prefix from the cache
+     *
+     * @param prefix the prefix of the keys to remove
+     */
+    public synchronized void invalidatePrefix(String prefix) {
+        Iterator<Map.Entry<String, BufferedImage>> iterator = images.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                currentBytes -= weigh(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all images from the cache
+     */
+    public synchronized void clear() {
+        images.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Sets the budget of the cache, evicting images if the cache is now over the budget
+     *
+     * @param maxBytes the maximum number of bytes the cached images can take up
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return the maximum number of bytes the cached images can take up
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes the cached images currently take up
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * @return the number of cached images
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * @return the number of lookups which found an image
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups which did not find an image
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Helper method which publishes the hits, misses and size of the cache as gauges
+     */
+    private void registerGauges(String name) {
+        Metrics.gauge(name + ".hits", this::getHits);
+        Metrics.gauge(name + ".misses", this::getMisses);
+        Metrics.gauge(name + ".bytes", this::getCurrentBytes);
+    }
+
+    /**
+     * Calculates the number of bytes a decoded image takes up
+     *
+     * @param image the decoded image
+     * @return width x height x bytes per pixel of the image
+     */
+    public static long weigh(BufferedImage image) {
+        int bytesPerPixel = (image.getColorModel().getPixelSize() + 7) / 8;
+        return (long) image.getWidth() * image.getHeight() * bytesPerPixel;
+    }
+
+    /**
+     * Helper method which evicts the least recently used images until the cache is within its budget
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, BufferedImage>> iterator = images.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            currentBytes -= weigh(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+}
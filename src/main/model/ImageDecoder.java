@@ -0,0 +1,122 @@
+package model;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Helper class for decoding images at a reduced resolution. Instead of decoding the full image and
+ * scaling it down afterwards, the image reader is asked to only decode every n-th pixel (source
+ * subsampling) and optionally only a region of the image, so the decoded image is never much larger
+ * than what is going to be shown.
+ */
+public final class ImageDecoder {
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * Reads the width and height of an image without decoding it
+     *
+     * @param file the image file
+     * @return the dimensions of the image
+     * @throws IOException if the file is not a readable image
+     */
+    public static Dimension readSize(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = getReader(input, file);
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes an image using the largest subsampling factor which still keeps the decoded image at
+     * least as large as the image scaled to fit within the target. The result is therefore between
+     * that size and twice that size (or the full image if it is smaller than the target) and is
+     * meant to be scaled down to the exact size afterwards.
+     *
+     * @param file the image file
+     * @param targetWidth the width the image will be shown at
+     * @param targetHeight the height the image will be shown at
+     * @return the subsampled image
+     * @throws IOException if the file is not a readable image
+     */
+    public static BufferedImage decode(File file, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = getReader(input, file);
+            try {
+                int subsampling = subsamplingFor(reader.getWidth(0), reader.getHeight(0), targetWidth, targetHeight);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes a region of an image, keeping only every n-th pixel of the region
+     *
+     * @param file the image file
+     * @param region the region of the image to decode, in full resolution pixel coordinates
+     * @param subsampling the subsampling factor, 1 to decode every pixel
+     * @return the decoded region
+     * @throws IOException if the file is not a readable image
+     */
+    public static BufferedImage decodeRegion(File file, Rectangle region, int subsampling) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = getReader(input, file);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region.intersection(new Rectangle(reader.getWidth(0), reader.getHeight(0))));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Calculates the largest subsampling factor which keeps an image at least as large as the image
+     * scaled to fit within the target. The dimension which limits the fit decides, so a panorama
+     * shown on a wide screen is subsampled by its width and not decoded at many times its height.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param targetWidth the width the image will be shown at
+     * @param targetHeight the height the image will be shown at
+     * @return the subsampling factor, at least 1
+     */
+    public static int subsamplingFor(int width, int height, int targetWidth, int targetHeight) {
+        int factor = Math.max(width / Math.max(1, targetWidth), height / Math.max(1, targetHeight));
+        return Math.max(1, factor);
+    }
+
+    /**
+     * Helper method which finds an image reader for the input and attaches the input to it
+     */
+    private static ImageReader getReader(ImageInputStream input, File file) throws IOException {
+        if (input == null) {
+            throw new IOException("Could not open " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("No image reader for " + file);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+}
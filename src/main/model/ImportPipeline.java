@@ -0,0 +1,341 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Imports jpeg files and whole directories of jpeg files into the image folder in the background.
+ * Every file goes through the stages copy (and hash) -> decode and thumbnail -> index, each stage running on
+ * its own threads. Copying waits on the source drive, so it runs on an I/O executor (virtual threads
+ * where available) with up to imagerepo.ioConcurrency copies at once. Decoding runs on one thread
+ * per core. The stages are connected by bounded queues and handing work to a full queue waits, so
+ * a slow stage throttles the ones in front of it instead of letting work pile up in memory.
+ * Imported photos are handed to the listener in batches.
+ */
+public class ImportPipeline {
+    private static final int COPY_CONCURRENCY = Math.max(1, Integer.getInteger("imagerepo.ioConcurrency", 16));
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int BATCH_SIZE = 50;
+    private static final long BATCH_WAIT_MILLIS = 100;
+
+    private final PhotoPaths paths;
+    private final ContentHashIndex hashIndex;
+    // names of photos being imported, from choosing the name until the photo is handed to the listener
+    private final Set<String> reservedNames = ConcurrentHashMap.newKeySet();
+    private final ExecutorService feeder = TaskExecutors.newIoExecutor("import-feeder");
+    private final ExecutorService copyStage = TaskExecutors.newIoExecutor("import-copy");
+    // taken by the feeder for every file it hands to the copy stage, given back once the file is copied
+    private final Semaphore copyPermits = new Semaphore(COPY_CONCURRENCY);
+    private final ThreadPoolExecutor thumbnailStage = TaskExecutors.newCpuExecutor(
+            "import-thumbnail", TaskExecutors.CPU_THREADS, QUEUE_CAPACITY);
+    private final ExecutorService indexStage = TaskExecutors.newIoExecutor("import-index");
+    private final LongSupplier copyGauge = () -> COPY_CONCURRENCY - copyPermits.availablePermits();
+    private final LongSupplier thumbnailQueueGauge = () -> thumbnailStage.getQueue().size();
+
+    /**
+     * Listener which is told about the progress of an import. The methods are called from the
+     * pipeline threads, not the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * Called with every batch of photos which finished importing
+         *
+         * @param photos the newly imported photos
+         */
+        void photosImported(List<Photo> photos);
+
+        /**
+         * Called whenever a file finished importing, whether it succeeded or not
+         *
+         * @param completed the number of files which finished importing
+         * @param total the number of files being imported
+         */
+        void progress(int completed, int total);
+
+        /**
+         * Called when a file was not imported because the repository already has a photo with
+         * the same content
+         *
+         * @param source the file which was not imported
+         * @param existing the photo with the same content
+         */
+        void duplicateSkipped(Path source, Photo existing);
+
+        /**
+         * Called when a file could not be imported
+         *
+         * @param source the file which could not be imported
+         * @param reason why the file could not be imported
+         */
+        void importFailed(Path source, IOException reason);
+    }
+
+    /**
+     * Constructor for an import pipeline
+     *
+     * @param paths where the photos are imported to
+     * @param hashIndex the content hashes of the photos in the repository, imported photos are
+     *                  added to it
+     */
+    public ImportPipeline(PhotoPaths paths, ContentHashIndex hashIndex) {
+        this.paths = paths;
+        this.hashIndex = hashIndex;
+        Metrics.gauge("import.copying", copyGauge);
+        Metrics.gauge("import.thumbnailQueue", thumbnailQueueGauge);
+    }
+
+    /**
+     * Starts importing files. Directories are searched recursively for jpeg files. Returns
+     * immediately, the listener is told about the progress.
+     *
+     * @param sources the files and directories to import
+     * @param listener the listener to tell about the progress
+     */
+    public void importFiles(List<Path> sources, Listener listener) {
+        feeder.execute(() -> {
+            List<Path> files = new ArrayList<>();
+            for (Path source : sources) {
+                collectJpegFiles(source, files, listener);
+            }
+            Batch batch = new Batch(files.size(), listener, reservedNames);
+            indexStage.execute(batch::run);
+            try {
+                for (Path file : files) {
+                    copyPermits.acquire();
+                    copyStage.execute(() -> {
+                        try {
+                            copy(file, batch);
+                        } finally {
+                            copyPermits.release();
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                // the pipeline was shut down
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Stops the pipeline, files which are still being imported are abandoned
+     */
+    public void shutdown() {
+        Metrics.removeGauge("import.copying", copyGauge);
+        Metrics.removeGauge("import.thumbnailQueue", thumbnailQueueGauge);
+        feeder.shutdownNow();
+        copyStage.shutdownNow();
+        thumbnailStage.shutdownNow();
+        indexStage.shutdownNow();
+    }
+
+    /**
+     * Checks whether a photo is being imported right now, its file may already be in the image
+     * folder while its thumbnail is still being created
+     *
+     * @param name the name of the photo
+     * @return true if a photo with this name is being imported
+     */
+    public boolean isImporting(String name) {
+        return reservedNames.contains(name);
+    }
+
+    /**
+     * Checks whether a file is a jpeg file by its extension
+     *
+     * @param file the file to check
+     * @return true if the file has a .jpg or .jpeg extension
+     */
+    public static boolean isJpegFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    /**
+     * Copy stage, copies the file into the image folder while hashing it. Files whose content is
+     * already in the repository are dropped. Files are never overwritten, a file with the name of a
+     * different photo is stored under a numbered name such as "doggo (2)".
+     */
+    private void copy(Path source, Batch batch) {
+        // copied into the photos folder itself, so it is on the same drive as where it is moved to
+        Path temporary = paths.getImageDirectory().resolve(".import-" + UUID.randomUUID() + ".tmp");
+        Metrics.Sample sample = Metrics.COPY.start(source.toString());
+        String hash;
+        try {
+            hash = ContentHash.copy(source, temporary);
+        } catch (IOException e) {
+            sample.fail(e);
+            deleteQuietly(temporary);
+            batch.failed(source, e);
+            return;
+        }
+
+        String baseName = source.getFileName().toString().replaceFirst("[.][^.]+$", "");
+        String name = reserveName(baseName);
+        Photo photo = new Photo(name);
+        Photo existing = hashIndex.claim(hash, photo);
+        if (existing != null) {
+            sample.stop();
+            deleteQuietly(temporary);
+            reservedNames.remove(name);
+            batch.duplicate(source, existing);
+            return;
+        }
+        try {
+            Path target = paths.imageFile(name);
+            Files.createDirectories(target.getParent());
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            sample.fail(e);
+            deleteQuietly(temporary);
+            hashIndex.release(hash, photo);
+            reservedNames.remove(name);
+            batch.failed(source, e);
+            return;
+        }
+        sample.stop();
+        try {
+            thumbnailStage.execute(() -> createThumbnail(source, photo, hash, batch));
+        } catch (RejectedExecutionException e) {
+            // the pipeline was shut down, the import is abandoned
+        }
+    }
+
+    /**
+     * Decode and thumbnail stage, decodes the copied photo and creates its thumbnail. Files which
+     * cannot be decoded are removed from the image folder again.
+     */
+    private void createThumbnail(Path source, Photo photo, String hash, Batch batch) {
+        if (!photo.createThumbnail()) {
+            deleteQuietly(paths.imageFile(photo.getName()));
+            hashIndex.release(hash, photo);
+            reservedNames.remove(photo.getName());
+            batch.failed(source, new IOException("Could not decode " + source));
+        } else {
+            photo.readFileInfo(hash);
+            batch.imported(photo);
+        }
+    }
+
+    /**
+     * Helper method which finds a name which is neither used by a file in the image folder nor
+     * being imported right now, by numbering the name if needed
+     */
+    private String reserveName(String baseName) {
+        String name = baseName;
+        for (int number = 2; Files.exists(paths.imageFile(name)) || !reservedNames.add(name); number++) {
+            name = baseName + " (" + number + ")";
+        }
+        return name;
+    }
+
+    /**
+     * Helper method which deletes a file, ignoring failures
+     */
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // nothing else can be done about it
+        }
+    }
+
+    /**
+     * Helper method which adds the jpeg files in a file or directory to a list
+     */
+    private static void collectJpegFiles(Path source, List<Path> files, Listener listener) {
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> walk = Files.walk(source)) {
+                walk.filter(Files::isRegularFile).filter(ImportPipeline::isJpegFile).forEach(files::add);
+            } catch (IOException e) {
+                listener.importFailed(source, e);
+            }
+        } else if (isJpegFile(source)) {
+            files.add(source);
+        }
+    }
+
+    /**
+     * Index stage of one call to importFiles, each import gets its own index thread. Collects the imported photos and hands them to the
+     * listener in batches.
+     */
+    private static class Batch {
+        private final int total;
+        private final Listener listener;
+        private final Set<String> reservedNames;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final BlockingQueue<Photo> imported = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        Batch(int total, Listener listener, Set<String> reservedNames) {
+            this.total = total;
+            this.listener = listener;
+            this.reservedNames = reservedNames;
+        }
+
+        void imported(Photo photo) {
+            try {
+                imported.put(photo);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void failed(Path source, IOException reason) {
+            listener.importFailed(source, reason);
+            listener.progress(completed.incrementAndGet(), total);
+        }
+
+        void duplicate(Path source, Photo existing) {
+            listener.duplicateSkipped(source, existing);
+            listener.progress(completed.incrementAndGet(), total);
+        }
+
+        /**
+         * Runs until every file of the import finished, either successfully or not
+         */
+        void run() {
+            List<Photo> batch = new ArrayList<>();
+            try {
+                while (completed.get() < total) {
+                    Photo photo = imported.poll(BATCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (photo != null) {
+                        batch.add(photo);
+                        imported.drainTo(batch, BATCH_SIZE - batch.size());
+                    }
+                    boolean lastFiles = completed.get() + batch.size() >= total;
+                    if (!batch.isEmpty() && (batch.size() >= BATCH_SIZE || photo == null || lastFiles)) {
+                        listener.photosImported(new ArrayList<>(batch));
+                        for (Photo done : batch) {
+                            reservedNames.remove(done.getName());
+                        }
+                        listener.progress(completed.addAndGet(batch.size()), total);
+                        batch.clear();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (total == 0) {
+                listener.progress(0, 0);
+            }
+        }
+    }
+}
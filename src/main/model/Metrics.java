@@ -0,0 +1,371 @@
+package model;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms for the operations of the repository, such as decoding photos,
+ * creating thumbnails and copying files, and gauges for things like the number of queued thumbnails.
+ * Every metric is registered as an MBean under the imagerepo domain so it can be watched with
+ * JConsole or any other JMX client, and all of them can be written to a CSV file periodically
+ * (startDump). Failed operations are counted separately and the last failure is kept, so errors
+ * which are otherwise only swallowed still show up.
+ */
+public final class Metrics {
+    private static final String DOMAIN = "imagerepo";
+    private static final String CSV_HEADER = "time,type,name,count,failures,meanMillis,p50Millis,p99Millis,maxMillis";
+    // the histogram buckets are powers of two microseconds, the last one collects everything above
+    private static final int BUCKETS = 40;
+    // created before the timers below, which register themselves
+    private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public static final Timer DECODE = timer("decode");
+    public static final Timer CREATE_THUMBNAIL = timer("createThumbnail");
+    public static final Timer LOAD_THUMBNAIL = timer("loadThumbnail");
+    public static final Timer READ_FILE_INFO = timer("readFileInfo");
+    public static final Timer COPY = timer("copy");
+    public static final Timer DELETE = timer("delete");
+    public static final Timer SERVE = timer("serve");
+    public static final Timer DECODE_TILE = timer("decodeTile");
+
+    private Metrics() {
+    }
+
+    /**
+     * A timer for one kind of operation: counts the operations and their failures and keeps a
+     * histogram of how long they took
+     */
+    public interface TimerMXBean {
+        long getCount();
+
+        long getFailures();
+
+        double getMeanMillis();
+
+        double getMedianMillis();
+
+        double get99thPercentileMillis();
+
+        double getMaxMillis();
+
+        String getLastFailure();
+    }
+
+    /**
+     * A value which is read when it is asked for, such as the length of a queue
+     */
+    public interface GaugeMXBean {
+        long getValue();
+    }
+
+    /**
+     * Timer for one kind of operation. Latencies are kept in buckets of powers of two, so the
+     * percentiles are the upper bounds of their buckets.
+     */
+    public static final class Timer implements TimerMXBean {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private volatile String lastFailure;
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Starts timing one operation, which has to be finished with stop or fail
+         *
+         * @param subject what the operation works on, such as the name of the photo
+         * @return the running sample
+         */
+        public Sample start(String subject) {
+            return new Sample(this, subject);
+        }
+
+        /**
+         * @return the name of the timed operation
+         */
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long operations = count.sum();
+            return operations == 0 ? 0 : totalNanos.sum() / 1e6 / operations;
+        }
+
+        @Override
+        public double getMedianMillis() {
+            return getPercentileMillis(0.5);
+        }
+
+        @Override
+        public double get99thPercentileMillis() {
+            return getPercentileMillis(0.99);
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public String getLastFailure() {
+            return lastFailure;
+        }
+
+        /**
+         * Estimates a percentile of the latencies from the histogram
+         *
+         * @param percentile the percentile between 0 and 1
+         * @return the upper bound of the bucket the percentile falls into, in milliseconds
+         */
+        public double getPercentileMillis(double percentile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            long wanted = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS && total > 0; i++) {
+                seen += buckets.get(i);
+                if (seen >= wanted) {
+                    return Math.min((1L << (i + 1)) / 1e3, getMaxMillis());
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Helper method which adds a finished operation to the statistics
+         */
+        private void record(long nanos, String failure) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            int bucket = 63 - Long.numberOfLeadingZeros(Math.max(1, nanos / 1000));
+            buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            if (failure != null) {
+                failures.increment();
+                lastFailure = failure;
+            }
+        }
+    }
+
+    /**
+     * One running operation of a timer
+     */
+    public static final class Sample {
+        private final Timer timer;
+        private final String subject;
+        private final long startNanos = System.nanoTime();
+
+        private Sample(Timer timer, String subject) {
+            this.timer = timer;
+            this.subject = subject;
+        }
+
+        /**
+         * Finishes the operation successfully
+         */
+        public void stop() {
+            finish(null);
+        }
+
+        /**
+         * Finishes the operation as failed
+         *
+         * @param reason why the operation failed
+         */
+        public void fail(Exception reason) {
+            fail(String.valueOf(reason));
+        }
+
+        /**
+         * Finishes the operation as failed
+         *
+         * @param reason why the operation failed
+         */
+        public void fail(String reason) {
+            finish(subject == null ? reason : subject + ": " + reason);
+        }
+
+        /**
+         * Helper method which records the operation in the timer
+         */
+        private void finish(String failure) {
+            timer.record(System.nanoTime() - startNanos, failure);
+        }
+    }
+
+    /**
+     * Gauge which reads its value from a supplier, the supplier can be replaced when the component
+     * it belongs to is replaced
+     */
+    public static final class Gauge implements GaugeMXBean {
+        private volatile LongSupplier supplier;
+
+        private Gauge(LongSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public long getValue() {
+            LongSupplier current = supplier;
+            return current == null ? 0 : current.getAsLong();
+        }
+    }
+
+    /**
+     * Gets a timer by its name
+     *
+     * @param name the name of the timer
+     * @return the timer or null if there is none with this name
+     */
+    public static Timer getTimer(String name) {
+        return timers.get(name);
+    }
+
+    /**
+     * Sets the supplier of a gauge, registering the gauge the first time it is used
+     *
+     * @param name the name of the gauge
+     * @param supplier reads the current value
+     */
+    public static void gauge(String name, LongSupplier supplier) {
+        Gauge gauge = gauges.get(name);
+        if (gauge != null) {
+            gauge.supplier = supplier;
+        } else {
+            gauge = new Gauge(supplier);
+            if (gauges.putIfAbsent(name, gauge) == null) {
+                register("Gauge", name, gauge);
+            } else {
+                gauges.get(name).supplier = supplier;
+            }
+        }
+    }
+
+    /**
+     * Stops a gauge from reading from a supplier, for when the component it belongs to is closed.
+     * Nothing happens if the gauge reads from a different supplier by now.
+     *
+     * @param name the name of the gauge
+     * @param supplier the supplier the gauge should not read from any more
+     */
+    public static void removeGauge(String name, LongSupplier supplier) {
+        Gauge gauge = gauges.get(name);
+        if (gauge != null && gauge.supplier == supplier) {
+            gauge.supplier = null;
+        }
+    }
+
+    /**
+     * Gets the current value of a gauge
+     *
+     * @param name the name of the gauge
+     * @return the value or 0 if there is no gauge with this name
+     */
+    public static long getGaugeValue(String name) {
+        Gauge gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.getValue();
+    }
+
+    /**
+     * Writes the current value of every metric as CSV lines: timers with their count, failures and
+     * latencies, gauges with their value as the count
+     *
+     * @param out where to write the lines
+     * @param header whether to write the header line first
+     * @throws IOException if the lines could not be written
+     */
+    public static void writeCsv(Appendable out, boolean header) throws IOException {
+        long time = System.currentTimeMillis();
+        if (header) {
+            out.append(CSV_HEADER).append('\n');
+        }
+        for (Timer timer : timers.values()) {
+            out.append(String.format(Locale.ROOT, "%d,timer,%s,%d,%d,%.3f,%.3f,%.3f,%.3f\n", time,
+                    timer.name, timer.getCount(), timer.getFailures(), timer.getMeanMillis(),
+                    timer.getMedianMillis(), timer.get99thPercentileMillis(), timer.getMaxMillis()));
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            out.append(time + ",gauge," + entry.getKey() + "," + entry.getValue().getValue() + ",,,,,\n");
+        }
+    }
+
+    /**
+     * Starts appending the metrics to a CSV file periodically from a background thread
+     *
+     * @param file the file to append to, the header is written if the file is new
+     * @param period the time between two dumps
+     * @param unit the unit of the period
+     * @return the executor doing the dumps, shut it down to stop them
+     */
+    public static ScheduledExecutorService startDump(Path file, long period, TimeUnit unit) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(TaskExecutors.daemonThreads("metrics-dump"));
+        dumper.scheduleAtFixedRate(() -> {
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writeCsv(out, Files.size(file) == 0);
+            } catch (IOException e) {
+                // the next dump tries again
+            }
+        }, period, period, unit);
+        return dumper;
+    }
+
+    /**
+     * Helper method which creates a timer and registers it
+     */
+    private static Timer timer(String name) {
+        Timer timer = new Timer(name);
+        timers.put(name, timer);
+        register("Timer", name, timer);
+        return timer;
+    }
+
+    /**
+     * Helper method which registers a metric with the platform MBean server
+     */
+    private static void register(String type, String name, Object metric) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metric,
+                    new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            // the metric still works, it just cannot be seen over JMX
+        }
+    }
+}
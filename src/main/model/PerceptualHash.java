@@ -0,0 +1,53 @@
+package model;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Helper class for perceptual hashes of images. Unlike a content hash, similar looking images get
+ * similar perceptual hashes, so the number of bits two hashes differ in (their Hamming distance)
+ * tells how alike the images are. The difference hash (dHash) is used: the image is shrunk to 9x8
+ * grey pixels and every bit says whether a pixel is brighter than its right neighbour.
+ */
+public final class PerceptualHash {
+    private static final int HASH_WIDTH = 8;
+    private static final int HASH_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Calculates the difference hash of an image. Small images such as thumbnails are enough.
+     *
+     * @param image the image to hash
+     * @return the 64 bit difference hash
+     */
+    public static long dHash(Image image) {
+        BufferedImage grey = new BufferedImage(HASH_WIDTH + 1, HASH_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = grey.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, HASH_WIDTH + 1, HASH_HEIGHT, null);
+        graphics.dispose();
+
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH; x++) {
+                int left = grey.getRaster().getSample(x, y, 0);
+                int right = grey.getRaster().getSample(x + 1, y, 0);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Calculates the Hamming distance between two hashes
+     *
+     * @param first the first hash
+     * @param second the second hash
+     * @return the number of bits the hashes differ in, 0 for identical looking images
+     */
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+}
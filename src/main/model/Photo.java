@@ -5,9 +5,16 @@ import net.coobird.thumbnailator.Thumbnails;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class representing a photo object. Each photo will have a name, date added.
@@ -15,22 +22,30 @@ import java.util.*;
  */
 
 public class Photo {
-    // variables for locating where an image is stored
-    private static final String IMAGE_DIR = "photos";
-    private static final String THUMBNAILS_DIR = "thumbnails";
-    private static final String IMAGE_TYPE = ".jpg";
-    private static final String PROJECT_DIRECTORY_PATH = System.getProperty("user.dir");
-    private static final String FILE_SEPARATOR = System.getProperty("file.separator");
-    private final String imageFilePath;
-    private final String thumbnailFilePath;
-
+    // where the files of the photos are stored, the project directory in the layout it is in
+    private static volatile PhotoPaths paths = PhotoPaths.detect(Paths.get(System.getProperty("user.dir")));
+    private static final String PREVIEW_KEY_SEPARATOR = "@";
+    private static final int THUMBNAIL_SIZE = 64;
+    // the sizes of the thumbnail pyramid, smallest first, the smallest level is the grid thumbnail
+    private static final int[] THUMBNAIL_LEVELS = parseThumbnailLevels(System.getProperty("imagerepo.thumbnailSizes"));
+    private static final double MAX_EMBEDDED_RATIO_DIFFERENCE = 0.02;
+    private static volatile ThumbnailPack thumbnailPack;
+    // the highest id handed out so far, ids of catalogued photos are never handed out again
+    private static final AtomicLong lastId = new AtomicLong();
+    private final long id;
     private final String name;
     private String description;
     private final Date dateAdded;
-    private Set<Tag> tags = new HashSet<>();
+    private final Set<Tag> tags = ConcurrentHashMap.newKeySet();
 
-    private BufferedImage image;
-    private BufferedImage thumbnail;
+    // metadata of the image file, kept in the catalog so unchanged files do not have to be read again
+    private volatile int width;
+    private volatile int height;
+    private volatile long fileSize;
+    private volatile long lastModified;
+    private volatile String contentHash;
+    private volatile long perceptualHash;
+    private volatile boolean hasPerceptualHash;
 
     /**
      * Constructor for a photo object
@@ -39,10 +54,41 @@ public class Photo {
      * @param name The name of the existing image file
      */
     public Photo(String name) {
+        this(name, new Date());
+    }
+
+    /**
+     * Constructor for a photo object which was added to the repository earlier
+     *
+     * @pre An jpeg image file of the same name must already exist in the image folder
+     * @param name The name of the existing image file
+     * @param dateAdded The date the photo was added to the repository
+     */
+    public Photo(String name, Date dateAdded) {
+        this(lastId.incrementAndGet(), name, dateAdded);
+    }
+
+    /**
+     * Constructor for a photo object whose id was given to it earlier
+     *
+     * @pre An jpeg image file of the same name must already exist in the image folder
+     * @param id The id of the photo, no other photo may have the same id
+     * @param name The name of the existing image file
+     * @param dateAdded The date the photo was added to the repository
+     */
+    public Photo(long id, String name, Date dateAdded) {
+        this.id = id;
         this.name = name;
-        dateAdded = new Date();
-        imageFilePath = PROJECT_DIRECTORY_PATH + FILE_SEPARATOR + IMAGE_DIR + FILE_SEPARATOR + this.name + IMAGE_TYPE;
-        thumbnailFilePath = PROJECT_DIRECTORY_PATH + FILE_SEPARATOR + THUMBNAILS_DIR + FILE_SEPARATOR + this.name + IMAGE_TYPE;
+        this.dateAdded = dateAdded;
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * @return the id of the photo, which stays the same for as long as the photo is in the
+     *         repository, even if another photo has the same name
+     */
+    public long getId() {
+        return id;
     }
 
     /**
@@ -76,28 +122,184 @@ public class Photo {
     }
 
     /**
-     * @return the image associated with this photo object
+     * @return the width of the image in pixels, 0 if unknown
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image in pixels, 0 if unknown
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the size of the image file in bytes, 0 if unknown
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return the last modified time of the image file in milliseconds, 0 if unknown
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the hex encoded SHA-256 hash of the image file or null if unknown
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return true if the perceptual hash of this photo is known
+     */
+    public boolean hasPerceptualHash() {
+        return hasPerceptualHash;
+    }
+
+    /**
+     * @return the perceptual hash of the image, only meaningful if hasPerceptualHash is true
+     */
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    /**
+     * Sets the perceptual hash of the image, used when it is restored from the catalog. The hash is
+     * otherwise calculated from the thumbnail whenever the thumbnail is created or loaded.
+     *
+     * @param perceptualHash the 64 bit difference hash of the image
+     */
+    public void setPerceptualHash(long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+        hasPerceptualHash = true;
+    }
+
+    /**
+     * Sets the metadata of the image file, used when the metadata is restored from the catalog
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param fileSize the size of the image file in bytes
+     * @param lastModified the last modified time of the image file in milliseconds
+     * @param contentHash the hex encoded SHA-256 hash of the image file
+     */
+    public void setFileInfo(int width, int height, long fileSize, long lastModified, String contentHash) {
+        this.width = width;
+        this.height = height;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Reads the metadata of the image file: its size and last modified time, the dimensions of the
+     * image (without decoding it) and the hash of its contents
+     */
+    public void readFileInfo() {
+        readFileInfo(null);
+    }
+
+    /**
+     * Reads the metadata of the image file, using a content hash which is already known (for example
+     * because it was calculated while the file was copied) instead of reading the file again
+     *
+     * @param knownContentHash the hex encoded SHA-256 hash of the file, or null to calculate it
+     */
+    public void readFileInfo(String knownContentHash) {
+        File imageFile = new File(getImageFilePath());
+        Metrics.Sample sample = Metrics.READ_FILE_INFO.start(name);
+        try {
+            Dimension size = ImageDecoder.readSize(imageFile);
+            String hash = knownContentHash != null ? knownContentHash : ContentHash.sha256(imageFile.toPath());
+            setFileInfo(size.width, size.height, imageFile.length(), imageFile.lastModified(), hash);
+            sample.stop();
+        } catch (IOException e) {
+            sample.fail(e);
+        }
+    }
+
+    /**
+     * Checks whether the image file changed since its metadata was read, by comparing the size and
+     * last modified time of the file
+     *
+     * @return true if the file changed or its metadata was never read
+     */
+    public boolean isFileChanged() {
+        File imageFile = new File(getImageFilePath());
+        return contentHash == null || imageFile.length() != fileSize || imageFile.lastModified() != lastModified;
+    }
+
+    /**
+     * Gets the full size image of this photo. The image is read through the shared image cache
+     * so it is only decoded again if it has been evicted.
+     *
+     * @return the image associated with this photo object or null if it could not be read
      */
     public Image getImage() {
+        BufferedImage image = ImageCache.getShared().get(getImageFilePath());
+        if (image == null) {
+            image = readImage();
+        }
         return image;
     }
 
     /**
-     * @return the thumbnail image associated with this photo object
+     * Gets a version of the image which fits within the given size, for showing the photo on screen.
+     * The smallest level of the thumbnail pyramid which is large enough is used if there is one,
+     * otherwise the image is decoded with subsampling so the full resolution image is never decoded
+     * for it. Images which already fit are returned at their full size.
+     *
+     * @param maxWidth the maximum width of the preview
+     * @param maxHeight the maximum height of the preview
+     * @return the preview image or null if it could not be read
+     */
+    public Image getPreview(int maxWidth, int maxHeight) {
+        String key = getImageFilePath() + PREVIEW_KEY_SEPARATOR + maxWidth + "x" + maxHeight;
+        BufferedImage preview = ImageCache.getShared().get(key);
+        if (preview == null) {
+            try {
+                preview = readThumbnailLevel(maxWidth, maxHeight);
+                if (preview == null) {
+                    preview = decode(maxWidth, maxHeight);
+                }
+                if (preview.getWidth() > maxWidth || preview.getHeight() > maxHeight) {
+                    preview = Thumbnails.of(preview).size(maxWidth, maxHeight).asBufferedImage();
+                }
+                ImageCache.getShared().put(key, preview);
+            } catch (IOException e) {
+                // counted by the decode metrics, there is just no preview
+            }
+        }
+        return preview;
+    }
+
+    /**
+     * Gets the thumbnail of this photo if it is loaded. Thumbnails are kept in a cache of their own,
+     * so only the recently used ones stay in memory, and this never reads the thumbnail from file.
+     *
+     * @return the thumbnail image associated with this photo object, or null if it is not loaded
      */
     public Image getThumbnail() {
-        return thumbnail;
+        return ImageCache.getThumbnails().get(getThumbnailFilePath());
     }
 
     /**
-     * Adds a tag to this photo
+     * Adds a tag to this photo, see Tag for how this is safe to call from several threads
      *
      * @param tag A tag to be added to this photo
      */
     public void addTag(Tag tag) {
-        if (!tags.contains(tag)) {
-            tags.add(tag);
-            tag.addTagToPhoto(this);
+        synchronized (Tag.lockFor(this, tag)) {
+            if (tags.add(tag)) {
+                tag.linkPhoto(this);
+            }
         }
     }
 
@@ -107,50 +309,469 @@ public class Photo {
      * @param tag A tag to be removed from this photo
      */
     public void removeTag(Tag tag) {
-        if (tags.contains(tag)) {
-            tags.remove(tag);
-            tag.removeTagFromPhoto(this);
+        synchronized (Tag.lockFor(this, tag)) {
+            if (tags.remove(tag)) {
+                tag.unlinkPhoto(this);
+            }
         }
     }
 
     /**
-     * @return The set of tags associated with this photo
+     * @return The set of tags associated with this photo, a live view which can be iterated while
+     *         other threads change the tags
      */
     public Set<Tag> getTags() {
         return Collections.unmodifiableSet(tags);
     }
 
     /**
-     * Loads the image from file
+     * Adds a tag to the tags of this photo, the caller holds the lock of the pair and has already
+     * added the photo to the tag
+     */
+    void linkTag(Tag tag) {
+        tags.add(tag);
+    }
+
+    /**
+     * Removes a tag from the tags of this photo, the caller holds the lock of the pair and has
+     * already removed the photo from the tag
+     */
+    void unlinkTag(Tag tag) {
+        tags.remove(tag);
+    }
+
+    /**
+     * Loads the image from file into the shared image cache
      */
     public void loadImage() {
+        readImage();
+    }
+
+    /**
+     * Removes the image from the shared image cache
+     */
+    public void unloadImage() {
+        ImageCache.getShared().invalidate(getImageFilePath());
+        ImageCache.getShared().invalidatePrefix(getImageFilePath() + PREVIEW_KEY_SEPARATOR);
+    }
+
+    /**
+     * Helper method which decodes the image from file and adds it to the shared image cache
+     *
+     * @return the decoded image or null if it could not be read
+     */
+    private BufferedImage readImage() {
+        BufferedImage image = null;
+        Metrics.Sample sample = Metrics.DECODE.start(name);
         try {
-            image = ImageIO.read(new File(imageFilePath));
+            image = ImageIO.read(new File(getImageFilePath()));
+            if (image == null) {
+                sample.fail("not a readable image");
+            } else {
+                sample.stop();
+            }
         } catch (IOException e) {
-            // silent return as nothing would happen
+            sample.fail(e);
         }
+        if (image != null) {
+            ImageCache.getShared().put(getImageFilePath(), image);
+        }
+        return image;
     }
 
     /**
-     * Creates a thumbnail from the photo (scales the picture into a smaller size)
+     * Helper method which decodes the image with subsampling, see ImageDecoder.decode
+     *
+     * @return the subsampled image
+     * @throws IOException if the file is not a readable image
      */
-    public void createThumbnail() {
+    private BufferedImage decode(int targetWidth, int targetHeight) throws IOException {
+        Metrics.Sample sample = Metrics.DECODE.start(name);
         try {
-            Thumbnails.of(new File(imageFilePath)).size(64, 64).toFile(thumbnailFilePath);
-            thumbnail = ImageIO.read(new File(thumbnailFilePath));
+            BufferedImage image = ImageDecoder.decode(new File(getImageFilePath()), targetWidth, targetHeight);
+            sample.stop();
+            return image;
         } catch (IOException e) {
-            // silent return as nothing would happen
+            sample.fail(e);
+            throw e;
         }
     }
 
     /**
-     * Loads the thumbnail from file
+     * Creates the thumbnail pyramid of the photo: a thumbnail for every configured size (by
+     * default 64, 256 and 1024 pixels, set with the imagerepo.thumbnailSizes system property).
+     * If the photo has a thumbnail embedded in its EXIF data, only the levels which are not larger
+     * than the embedded thumbnail are scaled from it, so importing does not decode the photo at all.
+     * The larger levels are then created from the photo itself when they are first read.
+     *
+     * @return true if the thumbnails were created, false if the photo could not be decoded
+     */
+    public boolean createThumbnail() {
+        return createThumbnail(true);
+    }
+
+    /**
+     * Creates the levels of the thumbnail pyramid if a level is not stored, such as the larger
+     * levels of a photo whose thumbnail was made from its EXIF thumbnail
+     *
+     * @param size the size of the level, one of getThumbnailSizes
+     * @return true if the level is stored
+     */
+    public boolean ensureThumbnailLevel(int size) {
+        return hasThumbnailLevel(size) || (createThumbnail(false) && hasThumbnailLevel(size));
+    }
+
+    /**
+     * Helper method which creates the thumbnail pyramid. Without the embedded thumbnail the photo is
+     * decoded only once, with subsampling so only about twice the largest size is decoded, and
+     * every level is scaled down from the level above it. Levels are never larger than the photo
+     * itself.
+     *
+     * @param useEmbedded whether the grid thumbnail may be made from the EXIF thumbnail
+     * @return true if the thumbnails were created, false if the photo could not be decoded
      */
-    public void loadThumbnail() {
+    private boolean createThumbnail(boolean useEmbedded) {
+        Metrics.Sample sample = Metrics.CREATE_THUMBNAIL.start(name);
         try {
-            thumbnail = ImageIO.read(new File(thumbnailFilePath));
+            BufferedImage level = useEmbedded ? readEmbeddedThumbnail(new File(getImageFilePath())) : null;
+            int top = THUMBNAIL_LEVELS.length - 1;
+            if (level == null) {
+                level = decode(THUMBNAIL_LEVELS[top], THUMBNAIL_LEVELS[top]);
+            } else {
+                while (THUMBNAIL_LEVELS[top] > Math.max(level.getWidth(), level.getHeight())) {
+                    // made from an earlier version of the file, it is created again when it is read
+                    deleteThumbnailLevel(THUMBNAIL_LEVELS[top]);
+                    top--;
+                }
+            }
+            for (int i = top; i > 0; i--) {
+                int size = THUMBNAIL_LEVELS[i];
+                if (Math.max(level.getWidth(), level.getHeight()) > size) {
+                    level = Thumbnails.of(level).size(size, size).asBufferedImage();
+                }
+                storeThumbnailLevel(size, level);
+            }
+            // the grid thumbnail is always scaled to the grid size, even for tiny photos
+            BufferedImage scaled = Thumbnails.of(level).size(THUMBNAIL_SIZE, THUMBNAIL_SIZE).asBufferedImage();
+            storeThumbnailLevel(THUMBNAIL_SIZE, scaled);
+            setThumbnail(scaled);
+            sample.stop();
+            return true;
         } catch (IOException e) {
-            // silent return as nothing would happen
+            sample.fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the sizes of the thumbnail pyramid, smallest first
+     */
+    public static int[] getThumbnailSizes() {
+        return THUMBNAIL_LEVELS.clone();
+    }
+
+    /**
+     * Helper method which stores one level of the thumbnail pyramid, in the pack or as a file. Only
+     * the grid thumbnails, which are read at startup, go into the pack: the larger levels are
+     * hundreds of times larger and would soon grow the pack beyond what can be mapped. As files
+     * the grid thumbnail goes into the thumbnails folder and the other levels into a folder per size.
+     */
+    private void storeThumbnailLevel(int size, BufferedImage level) throws IOException {
+        ThumbnailPack pack = thumbnailPack;
+        if (pack != null && size == THUMBNAIL_SIZE) {
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            ImageIO.write(level, "jpg", jpeg);
+            if (pack.hasRoomFor(name, jpeg.size())) {
+                pack.put(name, jpeg.toByteArray());
+                return;
+            }
+        }
+        File file = new File(getThumbnailFilePath(size));
+        file.getParentFile().mkdirs();
+        ImageIO.write(level, "jpg", file);
+    }
+
+    /**
+     * Helper method which reads the smallest level of the thumbnail pyramid which fills the given
+     * size as well as the photo itself would. Missing pyramids are created if a level would be
+     * large enough, as that decodes less of the photo than decoding it for the preview.
+     *
+     * @return the level or null if no level is large enough
+     */
+    private BufferedImage readThumbnailLevel(int maxWidth, int maxHeight) throws IOException {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        double scale = Math.min(1.0, Math.min((double) maxWidth / width, (double) maxHeight / height));
+        int needed = (int) Math.ceil(Math.max(width, height) * scale);
+        boolean created = false;
+        for (int size : THUMBNAIL_LEVELS) {
+            if (size == THUMBNAIL_SIZE || size < needed) {
+                continue;
+            }
+            BufferedImage level = readThumbnailLevel(size);
+            if (level == null && !created) {
+                created = createThumbnail(false);
+                level = created ? readThumbnailLevel(size) : null;
+            }
+            if (level != null) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper method which reads one stored level of the thumbnail pyramid
+     *
+     * @return the level or null if it is not stored
+     */
+    private BufferedImage readThumbnailLevel(int size) throws IOException {
+        // packs written by earlier versions also hold the larger levels
+        ThumbnailPack pack = thumbnailPack;
+        if (pack != null && pack.contains(getThumbnailLevelKey(size))) {
+            return pack.read(getThumbnailLevelKey(size));
+        }
+        File file = new File(getThumbnailFilePath(size));
+        return file.exists() ? ImageIO.read(file) : null;
+    }
+
+    /**
+     * Helper method which reads the EXIF thumbnail of the photo if it is usable, that is if it is at
+     * least as large as our thumbnails and has the same aspect ratio as the photo (some cameras pad
+     * their embedded thumbnails with black bars)
+     *
+     * @param imageFile the file of the photo
+     * @return the embedded thumbnail or null if there is no usable one or the file cannot be read
+     */
+    private static BufferedImage readEmbeddedThumbnail(File imageFile) {
+        BufferedImage embedded;
+        Dimension size;
+        try {
+            embedded = ExifThumbnailReader.read(imageFile);
+            if (embedded == null || Math.max(embedded.getWidth(), embedded.getHeight()) < THUMBNAIL_SIZE) {
+                return null;
+            }
+            size = ImageDecoder.readSize(imageFile);
+        } catch (IOException e) {
+            // the photo is decoded instead, which counts the failure
+            return null;
+        }
+        double photoRatio = (double) size.width / size.height;
+        double embeddedRatio = (double) embedded.getWidth() / embedded.getHeight();
+        return Math.abs(photoRatio - embeddedRatio) / photoRatio < MAX_EMBEDDED_RATIO_DIFFERENCE ? embedded : null;
+    }
+
+    /**
+     * Loads the thumbnail from file. When a thumbnail pack is used the thumbnail is read from the
+     * pack, thumbnails which are only in the thumbnails folder are moved into the pack.
+     *
+     * @return true if the thumbnail was loaded, false if no thumbnail is stored for this photo
+     */
+    public boolean loadThumbnail() {
+        Metrics.Sample sample = Metrics.LOAD_THUMBNAIL.start(name);
+        try {
+            boolean loaded = readStoredThumbnail();
+            sample.stop();
+            return loaded;
+        } catch (IOException e) {
+            sample.fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * Helper method which reads the stored thumbnail into the thumbnail cache
+     *
+     * @return true if the thumbnail was loaded, false if no thumbnail is stored for this photo
+     * @throws IOException if the stored thumbnail could not be read
+     */
+    private boolean readStoredThumbnail() throws IOException {
+        ThumbnailPack pack = thumbnailPack;
+        File thumbnailFile = new File(getThumbnailFilePath());
+        if (pack == null) {
+            return thumbnailFile.exists() && setThumbnail(ImageIO.read(thumbnailFile));
+        } else if (pack.contains(name)) {
+            return setThumbnail(pack.read(name));
+        } else if (thumbnailFile.exists()) {
+            byte[] jpeg = Files.readAllBytes(thumbnailFile.toPath());
+            if (pack.hasRoomFor(name, jpeg.length)) {
+                pack.put(name, jpeg);
+                thumbnailFile.delete();
+            }
+            return setThumbnail(ImageIO.read(new ByteArrayInputStream(jpeg)));
+        }
+        return false;
+    }
+
+    /**
+     * Helper method which puts the thumbnail into the thumbnail cache and calculates the perceptual
+     * hash from it
+     *
+     * @return true if there was a thumbnail
+     */
+    private boolean setThumbnail(BufferedImage loaded) {
+        if (loaded == null) {
+            return false;
+        }
+        setPerceptualHash(PerceptualHash.dHash(loaded));
+        ImageCache.getThumbnails().put(getThumbnailFilePath(), loaded);
+        return true;
+    }
+
+    /**
+     * @return the image file of this photo
+     */
+    public Path getImageFile() {
+        return paths.imageFile(name);
+    }
+
+    /**
+     * Gets the file a level of the thumbnail pyramid is kept in when it is not in the thumbnail pack
+     *
+     * @param size the size of the level, one of getThumbnailSizes
+     * @return the file of the level, which may not exist
+     */
+    public Path getThumbnailFile(int size) {
+        return Paths.get(getThumbnailFilePath(size));
+    }
+
+    /**
+     * Reads the jpeg bytes of a level of the thumbnail pyramid from the thumbnail pack
+     *
+     * @param size the size of the level, one of getThumbnailSizes
+     * @return the jpeg bytes, or null if no pack is used or the pack does not hold the level
+     * @throws IOException if the pack could not be read
+     */
+    public byte[] readPackedThumbnail(int size) throws IOException {
+        ThumbnailPack pack = thumbnailPack;
+        return pack == null ? null : pack.readBytes(getThumbnailLevelKey(size));
+    }
+
+    /**
+     * @return true if a thumbnail has been stored for this photo, in the pack or the thumbnails folder
+     */
+    public boolean hasStoredThumbnail() {
+        ThumbnailPack pack = thumbnailPack;
+        return (pack != null && pack.contains(name)) || new File(getThumbnailFilePath()).exists();
+    }
+
+    /**
+     * Deletes the stored thumbnail of this photo from the pack and the thumbnails folder
+     *
+     * @return true if a stored thumbnail was deleted
+     */
+    public boolean deleteThumbnail() {
+        boolean deleted = false;
+        for (int size : THUMBNAIL_LEVELS) {
+            deleted |= deleteThumbnailLevel(size);
+        }
+        ImageCache.getThumbnails().invalidate(getThumbnailFilePath());
+        return deleted;
+    }
+
+    /**
+     * Helper method which checks whether a level of the thumbnail pyramid is stored
+     */
+    private boolean hasThumbnailLevel(int size) {
+        ThumbnailPack pack = thumbnailPack;
+        return (pack != null && pack.contains(getThumbnailLevelKey(size))) || new File(getThumbnailFilePath(size)).exists();
+    }
+
+    /**
+     * Helper method which deletes a level of the thumbnail pyramid from the pack and the thumbnails folder
+     *
+     * @return true if the level was stored
+     */
+    private boolean deleteThumbnailLevel(int size) {
+        boolean deleted = new File(getThumbnailFilePath(size)).delete();
+        ThumbnailPack pack = thumbnailPack;
+        if (pack != null) {
+            try {
+                deleted |= pack.remove(getThumbnailLevelKey(size));
+            } catch (IOException e) {
+                // silent return as nothing would happen
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Sets the thumbnail pack which all photos store their thumbnails in. Without a pack every
+     * thumbnail is stored as its own file in the thumbnails folder.
+     *
+     * @param pack the thumbnail pack or null to use the thumbnails folder
+     */
+    public static void setThumbnailPack(ThumbnailPack pack) {
+        thumbnailPack = pack;
+    }
+
+    /**
+     * Sets where all photos read and store their files, by default the layout found in the
+     * project directory (user.dir)
+     *
+     * @param photoPaths the paths of the repository
+     */
+    public static void setPaths(PhotoPaths photoPaths) {
+        paths = photoPaths;
+    }
+
+    /**
+     * Helper method which builds the path of the image file. The paths are built when needed
+     * rather than stored, which keeps photos small when the catalog holds a large number of them.
+     */
+    private String getImageFilePath() {
+        return paths.imageFile(name).toString();
+    }
+
+    /**
+     * Helper method which builds the path of the thumbnail file
+     */
+    private String getThumbnailFilePath() {
+        return paths.thumbnailFile(name).toString();
+    }
+
+    /**
+     * Helper method which builds the path of the file of a level of the thumbnail pyramid
+     */
+    private String getThumbnailFilePath(int size) {
+        if (size == THUMBNAIL_SIZE) {
+            return getThumbnailFilePath();
+        }
+        return paths.thumbnailFile(name, size).toString();
+    }
+
+    /**
+     * Helper method which builds the name a level of the thumbnail pyramid is stored under in the pack
+     */
+    private String getThumbnailLevelKey(int size) {
+        return size == THUMBNAIL_SIZE ? name : name + PREVIEW_KEY_SEPARATOR + size;
+    }
+
+    /**
+     * Helper method which parses the sizes of the thumbnail pyramid, such as "64,256,1024". The
+     * grid thumbnail size is always included.
+     *
+     * @param sizes the comma separated sizes, or null for the default sizes
+     * @return the sizes, smallest first
+     */
+    private static int[] parseThumbnailLevels(String sizes) {
+        TreeSet<Integer> levels = new TreeSet<>();
+        levels.add(THUMBNAIL_SIZE);
+        try {
+            for (String size : (sizes == null ? "64,256,1024" : sizes).split(",")) {
+                if (!size.trim().isEmpty() && Integer.parseInt(size.trim()) > THUMBNAIL_SIZE) {
+                    levels.add(Integer.parseInt(size.trim()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return parseThumbnailLevels(null);
+        }
+        int[] result = new int[levels.size()];
+        int i = 0;
+        for (int size : levels) {
+            result[i++] = size;
         }
+        return result;
     }
 }
@@ -0,0 +1,374 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent catalog of the photos in the repository. It remembers for every photo the date it
+ * was added, its description and tags and the metadata of its image file, so none of it is lost at
+ * exit and unchanged files do not have to be read again at startup.
+ *
+ * The catalog is stored as an append-only log of compact binary records, which is read into memory
+ * and parsed in a single pass when loading: every change appends a record
+ * with the full state of one photo, or a record saying a photo was removed. When loading, later
+ * records replace earlier ones. Once most of the log consists of replaced records it is compacted
+ * by rewriting it with only the current state of every photo.
+ */
+public class PhotoCatalog {
+    private static final int MAGIC = 0x49524354; // "IRCT"
+    // version 2 added the perceptual hash and version 3 the photo id, older catalogs are upgraded
+    // when they are loaded
+    private static final int VERSION = 3;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final int HEADER_LENGTH = 8;
+    private static final int COMPACT_MIN_RECORDS = 1000;
+
+    private final Path file;
+    private final Map<String, Photo> photos = new LinkedHashMap<>();
+    private DataOutputStream log;
+    private int records;
+    private int fileVersion;
+
+    /**
+     * Constructor for a catalog
+     *
+     * @param file the file the catalog is stored in, it is created if it does not exist
+     */
+    public PhotoCatalog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the catalog from its file. A record which was only partially written (for example
+     * because the application was killed) is dropped. Opens the catalog for writing afterwards.
+     *
+     * @return the photos in the catalog by name, in the order they were first added
+     * @throws IOException if the catalog could not be read
+     */
+    public synchronized Map<String, Photo> load() throws IOException {
+        photos.clear();
+        records = 0;
+        fileVersion = VERSION;
+        long validLength = 0;
+        if (Files.exists(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Photo catalog too large: " + file);
+                }
+                // read in one go rather than memory mapped, a mapping would keep the file locked on
+                // some platforms until it is garbage collected, which stops it from being truncated
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // keep reading until the whole file is in the buffer
+                }
+                buffer.flip();
+                validLength = readLog(buffer);
+            }
+        }
+        openLog(validLength);
+        if (needsCompaction() || fileVersion < VERSION) {
+            compact();
+        }
+        return new LinkedHashMap<>(photos);
+    }
+
+    /**
+     * Adds a photo to the catalog or updates it if it is already in the catalog
+     *
+     * @param photo the photo to store
+     * @throws IOException if the catalog could not be written
+     */
+    public synchronized void put(Photo photo) throws IOException {
+        append(photo);
+        log.flush();
+        compactIfNeeded();
+    }
+
+    /**
+     * Adds or updates several photos at once
+     *
+     * @param toStore the photos to store
+     * @throws IOException if the catalog could not be written
+     */
+    public synchronized void putAll(Collection<Photo> toStore) throws IOException {
+        for (Photo photo : toStore) {
+            append(photo);
+        }
+        log.flush();
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes a photo from the catalog
+     *
+     * @param name the name of the photo to remove
+     * @throws IOException if the catalog could not be written
+     */
+    public synchronized void remove(String name) throws IOException {
+        if (photos.remove(name) != null) {
+            log.writeByte(RECORD_REMOVE);
+            writeString(log, name);
+            log.flush();
+            records++;
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * @return the number of photos in the catalog
+     */
+    public synchronized int size() {
+        return photos.size();
+    }
+
+    /**
+     * @return the number of records in the log, including replaced ones
+     */
+    public synchronized int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Rewrites the log with only the current state of every photo. The new log is written next to
+     * the old one and then moved over it, so a crash during compaction leaves the old log intact.
+     *
+     * @throws IOException if the catalog could not be written
+     */
+    public synchronized void compact() throws IOException {
+        closeLog();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            for (Photo photo : photos.values()) {
+                writePhoto(output, photo);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = photos.size();
+        openLog(Files.size(file));
+    }
+
+    /**
+     * Closes the catalog file
+     *
+     * @throws IOException if the catalog could not be written
+     */
+    public synchronized void close() throws IOException {
+        closeLog();
+    }
+
+    /**
+     * Helper method which reads every record of the log
+     *
+     * @param buffer the whole log
+     * @return the length of the log up to the end of the last complete record
+     */
+    private int readLog(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            return 0;
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a photo catalog: " + file);
+        }
+        fileVersion = buffer.getInt();
+        if (fileVersion < 1 || fileVersion > VERSION) {
+            throw new IOException("Unsupported photo catalog version " + fileVersion + ": " + file);
+        }
+        // the tags are only linked once the last record of every photo is known, so photos from
+        // replaced records are not kept reachable from their tags
+        Map<String, List<String>> tagNamesByPhoto = new HashMap<>();
+        int validLength = buffer.position();
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                if (type == RECORD_PUT) {
+                    List<String> tagNames = new ArrayList<>();
+                    Photo photo = readPhoto(buffer, fileVersion, tagNames);
+                    photos.remove(photo.getName());
+                    photos.put(photo.getName(), photo);
+                    tagNamesByPhoto.put(photo.getName(), tagNames);
+                } else if (type == RECORD_REMOVE) {
+                    String name = readString(buffer);
+                    photos.remove(name);
+                    tagNamesByPhoto.remove(name);
+                } else {
+                    throw new IOException("Corrupt photo catalog: " + file);
+                }
+                records++;
+                validLength = buffer.position();
+            }
+        } catch (BufferUnderflowException e) {
+            // a record which was cut off part way through
+        }
+        Map<String, Tag> tagsByName = new HashMap<>();
+        for (Photo photo : photos.values()) {
+            for (String tagName : tagNamesByPhoto.get(photo.getName())) {
+                photo.addTag(tagsByName.computeIfAbsent(tagName, Tag::new));
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * Helper method which reads one photo record, the names of its tags are added to the given list
+     */
+    private static Photo readPhoto(ByteBuffer buffer, int version, List<String> tagNames) {
+        String name = readString(buffer);
+        long id = version >= 3 ? buffer.getLong() : 0;
+        Date dateAdded = new Date(buffer.getLong());
+        // photos from catalogs without ids get new ids, which are stored when the catalog is upgraded
+        Photo photo = version >= 3 ? new Photo(id, name, dateAdded) : new Photo(name, dateAdded);
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        long fileSize = buffer.getLong();
+        long lastModified = buffer.getLong();
+        int hashLength = buffer.get() & 0xff;
+        if (hashLength > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] hash = new byte[hashLength];
+        buffer.get(hash);
+        boolean hasPerceptualHash = version >= 2 && buffer.get() != 0;
+        long perceptualHash = hasPerceptualHash ? buffer.getLong() : 0;
+        String description = buffer.get() != 0 ? readString(buffer) : null;
+        int tagCount = buffer.getInt();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < tagCount; i++) {
+            names.add(readString(buffer));
+        }
+        // only fill in the photo once the whole record was read, so a cut off record leaves no trace
+        photo.setFileInfo(width, height, fileSize, lastModified, hash.length == 0 ? null : ContentHash.toHex(hash));
+        photo.setDescription(description);
+        if (hasPerceptualHash) {
+            photo.setPerceptualHash(perceptualHash);
+        }
+        tagNames.addAll(names);
+        return photo;
+    }
+
+    /**
+     * Helper method which writes one photo record
+     */
+    private static void writePhoto(DataOutputStream output, Photo photo) throws IOException {
+        output.writeByte(RECORD_PUT);
+        writeString(output, photo.getName());
+        output.writeLong(photo.getId());
+        output.writeLong(photo.getDateAdded().getTime());
+        output.writeInt(photo.getWidth());
+        output.writeInt(photo.getHeight());
+        output.writeLong(photo.getFileSize());
+        output.writeLong(photo.getLastModified());
+        byte[] hash = photo.getContentHash() == null ? new byte[0] : ContentHash.fromHex(photo.getContentHash());
+        output.writeByte(hash.length);
+        output.write(hash);
+        output.writeBoolean(photo.hasPerceptualHash());
+        if (photo.hasPerceptualHash()) {
+            output.writeLong(photo.getPerceptualHash());
+        }
+        output.writeBoolean(photo.getDescription() != null);
+        if (photo.getDescription() != null) {
+            writeString(output, photo.getDescription());
+        }
+        Collection<Tag> tags = new ArrayList<>(photo.getTags());
+        output.writeInt(tags.size());
+        for (Tag tag : tags) {
+            writeString(output, tag.getName());
+        }
+    }
+
+    /**
+     * Helper method which reads a string stored as its length followed by its UTF-8 bytes
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Helper method which writes a string as its length followed by its UTF-8 bytes
+     */
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Helper method which appends a photo record to the log
+     */
+    private void append(Photo photo) throws IOException {
+        writePhoto(log, photo);
+        photos.remove(photo.getName());
+        photos.put(photo.getName(), photo);
+        records++;
+    }
+
+    /**
+     * Helper method which opens the log for appending, cutting off anything after the given length
+     */
+    private void openLog(long validLength) throws IOException {
+        if (validLength == 0) {
+            try (DataOutputStream header = new DataOutputStream(Files.newOutputStream(file))) {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+            }
+        } else if (Files.size(file) > validLength) {
+            try (RandomAccessFile truncate = new RandomAccessFile(file.toFile(), "rw")) {
+                truncate.setLength(validLength);
+            }
+        }
+        OutputStream output = Files.newOutputStream(file, StandardOpenOption.APPEND);
+        log = new DataOutputStream(new BufferedOutputStream(output));
+    }
+
+    /**
+     * Helper method which closes the log if it is open
+     */
+    private void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Helper method which checks whether most of the log consists of replaced records
+     */
+    private boolean needsCompaction() {
+        return records >= COMPACT_MIN_RECORDS && records > 2 * photos.size();
+    }
+
+    /**
+     * Helper method which compacts the log if most of it consists of replaced records
+     */
+    private void compactIfNeeded() throws IOException {
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+}
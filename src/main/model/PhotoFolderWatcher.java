@@ -0,0 +1,187 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the photos folder for jpeg files which are created, changed or deleted by other
+ * programs. Events are collected until the folder has been quiet for a moment (or for at most a
+ * couple of seconds while files keep changing), then the listener is told about all of them at
+ * once. A file which is copied in, written in several steps and renamed is therefore reported
+ * once, with its final state. Subfolders, such as the hash folders of a sharded repository, are
+ * watched as well, including ones created later.
+ */
+public class PhotoFolderWatcher implements Closeable {
+    private static final long QUIET_MILLIS = 300;
+    private static final long MAX_DELAY_MILLIS = 2000;
+
+    private final Listener listener;
+    private final WatchService watchService;
+    // the folder each watch key belongs to, only used by the watcher thread after the constructor
+    private final Map<WatchKey, Path> folders = new HashMap<>();
+    private final Thread thread;
+
+    /**
+     * Listener which is told about changes in the folder, from the watcher thread
+     */
+    public interface Listener {
+        /**
+         * Called with a batch of changes
+         *
+         * @param present the names (without extension) of the photos which were created or changed
+         * @param deleted the names (without extension) of the photos which were deleted
+         */
+        void photosChanged(Set<String> present, Set<String> deleted);
+
+        /**
+         * Called when too many changes happened at once for them to be reported one by one, the
+         * whole folder has to be read again
+         */
+        void rescanNeeded();
+    }
+
+    /**
+     * Constructor for a watcher, which starts watching right away
+     *
+     * @param directory the folder to watch
+     * @param listener the listener to tell about changes
+     * @throws IOException if the folder cannot be watched
+     */
+    public PhotoFolderWatcher(Path directory, Listener listener) throws IOException {
+        this.listener = listener;
+        this.watchService = directory.getFileSystem().newWatchService();
+        register(directory, null);
+        thread = new Thread(this::run, "photo-folder-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching the folder, changes which were not reported yet are dropped
+     *
+     * @throws IOException if the watch service could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    /**
+     * Helper method run by the watcher thread, collects events and reports them in batches
+     */
+    private void run() {
+        Set<Path> changedFiles = new HashSet<>();
+        boolean overflow = false;
+        long firstEvent = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                if (changedFiles.isEmpty() && !overflow) {
+                    key = watchService.take();
+                    firstEvent = System.currentTimeMillis();
+                } else {
+                    long wait = Math.min(QUIET_MILLIS, firstEvent + MAX_DELAY_MILLIS - System.currentTimeMillis());
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (key != null) {
+                    Path folder = folders.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+                        Path file = folder.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                            registerQuietly(file, changedFiles);
+                        } else if (ImportPipeline.isJpegFile(file)) {
+                            changedFiles.add(file);
+                        }
+                    }
+                    if (!key.reset()) {
+                        folders.remove(key);
+                    }
+                    if (System.currentTimeMillis() - firstEvent < MAX_DELAY_MILLIS) {
+                        continue;
+                    }
+                }
+                report(changedFiles, overflow);
+                changedFiles = new HashSet<>();
+                overflow = false;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * Helper method which watches a folder and its subfolders
+     *
+     * @param existingFiles collects the jpeg files which are already in the folders, or null
+     */
+    private void register(Path folder, Set<Path> existingFiles) throws IOException {
+        WatchKey key = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        folders.put(key, folder);
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(folder)) {
+            for (Path child : children) {
+                if (Files.isDirectory(child)) {
+                    register(child, existingFiles);
+                } else if (existingFiles != null && ImportPipeline.isJpegFile(child)) {
+                    existingFiles.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method which watches a folder which was just created. Files which were put into it
+     * before it was watched are reported as changed.
+     */
+    private void registerQuietly(Path folder, Set<Path> changedFiles) {
+        try {
+            register(folder, changedFiles);
+        } catch (IOException e) {
+            // the folder is gone again, or it is picked up by the next rescan
+        }
+    }
+
+    /**
+     * Helper method which tells the listener about a batch of changed files. Whether a file was
+     * created, changed or deleted is decided by whether it exists now, as only its final state
+     * matters.
+     */
+    private void report(Set<Path> changedFiles, boolean overflow) {
+        if (overflow) {
+            listener.rescanNeeded();
+            return;
+        }
+        Set<String> present = new HashSet<>();
+        Set<String> deleted = new HashSet<>();
+        for (Path file : changedFiles) {
+            String fileName = file.getFileName().toString();
+            String name = fileName.substring(0, fileName.lastIndexOf('.'));
+            if (Files.exists(file)) {
+                present.add(name);
+            } else {
+                deleted.add(name);
+            }
+        }
+        if (!present.isEmpty() || !deleted.isEmpty()) {
+            listener.photosChanged(present, deleted);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Function;
+
+/**
+ * Moves the files of a flat repository into the sharded layout (see PhotoPaths) in place. Files
+ * are renamed within the same folders, so nothing is copied. The marker file which switches the
+ * repository to the sharded layout is only written once every file was moved, so a migration which
+ * was interrupted leaves the repository flat and can simply be run again. Run it while the
+ * application is closed:
+ *
+ * java -cp ... model.PhotoLayoutMigration [project directory]
+ */
+public final class PhotoLayoutMigration {
+
+    private PhotoLayoutMigration() {
+    }
+
+    /**
+     * Migrates the repository in the given folder, or in the working directory
+     *
+     * @param args the project directory, optional
+     * @throws IOException if a file could not be moved
+     */
+    public static void main(String[] args) throws IOException {
+        Path projectDirectory = Paths.get(args.length > 0 ? args[0] : System.getProperty("user.dir"));
+        int moved = migrate(projectDirectory);
+        System.out.println("Moved " + moved + " files, " + projectDirectory + " now uses the sharded layout");
+    }
+
+    /**
+     * Moves the photos and thumbnails of a repository into their hash folders and marks the
+     * repository as sharded. Repositories which are already sharded are left alone.
+     *
+     * @param projectDirectory the folder which holds the photos and thumbnails folders
+     * @return the number of files which were moved
+     * @throws IOException if a file could not be moved, the files moved so far stay moved
+     */
+    public static int migrate(Path projectDirectory) throws IOException {
+        if (PhotoPaths.detect(projectDirectory).isSharded()) {
+            return 0;
+        }
+        PhotoPaths sharded = new PhotoPaths(projectDirectory, true);
+        int moved = moveFiles(sharded.getImageDirectory(), sharded::imageFile);
+        for (int size : Photo.getThumbnailSizes()) {
+            Path levelDirectory = sharded.getThumbnailDirectory().resolve(Integer.toString(size));
+            moved += moveFiles(levelDirectory, name -> sharded.thumbnailFile(name, size));
+        }
+        moved += moveFiles(sharded.getThumbnailDirectory(), sharded::thumbnailFile);
+
+        Files.createDirectories(sharded.getImageDirectory());
+        Path marker = sharded.getImageDirectory().resolve(PhotoPaths.SHARDED_MARKER);
+        if (!Files.exists(marker)) {
+            Files.createFile(marker);
+        }
+        return moved;
+    }
+
+    /**
+     * Helper method which moves the jpeg files directly in a folder to where the sharded layout
+     * keeps them. Files which are already at their place in another folder are left where they are.
+     *
+     * @return the number of files which were moved
+     */
+    private static int moveFiles(Path folder, Function<String, Path> target) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return 0;
+        }
+        int moved = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, ImportPipeline::isJpegFile)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                Path destination = target.apply(fileName.substring(0, fileName.lastIndexOf('.')));
+                if (Files.isRegularFile(file) && !Files.exists(destination)) {
+                    Files.createDirectories(destination.getParent());
+                    Files.move(file, destination, StandardCopyOption.ATOMIC_MOVE);
+                    moved++;
+                }
+            }
+        }
+        return moved;
+    }
+}
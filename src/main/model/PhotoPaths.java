@@ -0,0 +1,161 @@
+package model;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves where the files of a photo are kept. In the flat layout every photo is
+ * photos/name.jpg and every thumbnail thumbnails/name.jpg (thumbnails/256/name.jpg for the larger
+ * levels). In the sharded layout the files are spread over 256 folders named after a hash of the
+ * photo name, such as photos/3f/name.jpg and thumbnails/256/3f/name.jpg, so no folder grows beyond
+ * a few thousand files even for a million photos. A repository is sharded if its photos folder
+ * has a .sharded marker file, which PhotoLayoutMigration writes after moving the files.
+ */
+public final class PhotoPaths {
+    public static final String SHARDED_MARKER = ".sharded";
+    private static final String IMAGE_DIR = "photos";
+    private static final String THUMBNAILS_DIR = "thumbnails";
+    private static final String IMAGE_TYPE = ".jpg";
+    private static final int SHARDS = 256;
+
+    private final Path projectDirectory;
+    private final Path imageDirectory;
+    private final Path thumbnailDirectory;
+    private final boolean sharded;
+
+    /**
+     * Constructor for the paths of a repository
+     *
+     * @param projectDirectory the folder which holds the photos and thumbnails folders
+     * @param sharded whether the files are spread over hash folders
+     */
+    public PhotoPaths(Path projectDirectory, boolean sharded) {
+        this.projectDirectory = projectDirectory;
+        this.imageDirectory = projectDirectory.resolve(IMAGE_DIR);
+        this.thumbnailDirectory = projectDirectory.resolve(THUMBNAILS_DIR);
+        this.sharded = sharded;
+    }
+
+    /**
+     * Gets the paths of a repository in the layout its files are in
+     *
+     * @param projectDirectory the folder which holds the photos and thumbnails folders
+     * @return sharded paths if the photos folder has the marker file, otherwise flat paths
+     */
+    public static PhotoPaths detect(Path projectDirectory) {
+        return new PhotoPaths(projectDirectory, Files.exists(projectDirectory.resolve(IMAGE_DIR).resolve(SHARDED_MARKER)));
+    }
+
+    /**
+     * @return the folder which holds the photos and thumbnails folders
+     */
+    public Path getProjectDirectory() {
+        return projectDirectory;
+    }
+
+    /**
+     * @return the photos folder
+     */
+    public Path getImageDirectory() {
+        return imageDirectory;
+    }
+
+    /**
+     * @return the thumbnails folder
+     */
+    public Path getThumbnailDirectory() {
+        return thumbnailDirectory;
+    }
+
+    /**
+     * @return true if the files are spread over hash folders
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * @param name the name of the photo
+     * @return the image file of the photo
+     */
+    public Path imageFile(String name) {
+        return shardOf(imageDirectory, name).resolve(name + IMAGE_TYPE);
+    }
+
+    /**
+     * @param name the name of the photo
+     * @return the grid thumbnail of the photo
+     */
+    public Path thumbnailFile(String name) {
+        return shardOf(thumbnailDirectory, name).resolve(name + IMAGE_TYPE);
+    }
+
+    /**
+     * @param name the name of the photo
+     * @param size the size of the thumbnail pyramid level
+     * @return the file of a larger level of the thumbnail pyramid
+     */
+    public Path thumbnailFile(String name, int size) {
+        return shardOf(thumbnailDirectory.resolve(Integer.toString(size)), name).resolve(name + IMAGE_TYPE);
+    }
+
+    /**
+     * Lists the folders which hold photos, the photos folder itself or its hash folders
+     *
+     * @return the folders which exist
+     */
+    public List<Path> imageFolders() {
+        return folders(imageDirectory);
+    }
+
+    /**
+     * Lists the folders which hold grid thumbnails, the thumbnails folder itself or its hash folders
+     *
+     * @return the folders which exist
+     */
+    public List<Path> thumbnailFolders() {
+        return folders(thumbnailDirectory);
+    }
+
+    /**
+     * Calculates the hash folder of a photo from its name. String.hashCode is specified by the
+     * language, so a photo is in the same folder on every platform and Java version.
+     *
+     * @param name the name of the photo
+     * @return the name of the hash folder, two hex digits
+     */
+    public static String shardName(String name) {
+        int hash = name.hashCode();
+        hash ^= hash >>> 16;
+        hash ^= hash >>> 8;
+        return String.format("%02x", hash & (SHARDS - 1));
+    }
+
+    /**
+     * Helper method which resolves the folder of a photo within a root folder
+     */
+    private Path shardOf(Path root, String name) {
+        return sharded ? root.resolve(shardName(name)) : root;
+    }
+
+    /**
+     * Helper method which lists the folders holding files within a root folder
+     */
+    private List<Path> folders(Path root) {
+        List<Path> folders = new ArrayList<>();
+        if (!sharded) {
+            folders.add(root);
+            return folders;
+        }
+        File[] shards = root.toFile().listFiles(file -> file.isDirectory() && file.getName().length() == 2);
+        if (shards != null) {
+            for (File shard : shards) {
+                folders.add(shard.toPath());
+            }
+        }
+        return folders;
+    }
+}
@@ -0,0 +1,718 @@
+package model;
+
+import java.awt.Image;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * The photo repository without any user interface. Keeps the list of photos and the indexes over
+ * them, imports and deletes photos and loads their thumbnails in the background, and keeps the
+ * storage up to date. All methods can be called from any thread, listeners are told about changes
+ * from the thread which made them.
+ */
+public class PhotoRepository {
+    // new and changed photos are checked in the background by a fixed number of workers so callers do not wait for them
+    private static final int REFRESH_WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int REFRESH_CHUNK_SIZE = 256;
+    private static final int THUMBNAIL_WORKERS = 2;
+    private static final int DECODE_QUEUE_CAPACITY = 16;
+
+    private final PhotoStorage storage;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Photo> photos = new LinkedHashMap<>();
+    // looking up a photo by its id does not take the lock
+    private final Map<Long, Photo> photosById = new ConcurrentHashMap<>();
+    private final ContentHashIndex hashIndex = new ContentHashIndex();
+    private final SimilarPhotoIndex similarIndex = new SimilarPhotoIndex();
+    private final TagIndex tagIndex = new TagIndex();
+    private final SortedPhotoIndex sortedIndex = new SortedPhotoIndex();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ImportPipeline importPipeline;
+    private volatile PhotoFolderWatcher watcher;
+    private final ThumbnailLoader thumbnailLoader = new ThumbnailLoader(THUMBNAIL_WORKERS, this::fireThumbnailLoaded);
+    private final ExecutorService refresher = Executors.newFixedThreadPool(REFRESH_WORKERS,
+            TaskExecutors.daemonThreads("photo-refresher"));
+    // deletes wait on the disk and run on I/O threads, previews are decoded on one thread per core
+    private final ExecutorService io = TaskExecutors.newIoExecutor("photo-io");
+    private final ExecutorService decoder = TaskExecutors.newCpuExecutor("photo-decoder", TaskExecutors.CPU_THREADS, DECODE_QUEUE_CAPACITY);
+    private final AtomicInteger pendingRefreshes = new AtomicInteger();
+    private final LongSupplier pendingRefreshGauge = pendingRefreshes::get;
+
+    /**
+     * Listener which is told about changes to the repository. The methods are called from
+     * background threads.
+     */
+    public interface Listener {
+        /**
+         * Called when photos were added, either when the repository was opened or by an import
+         *
+         * @param added the added photos
+         */
+        void photosAdded(List<Photo> added);
+
+        /**
+         * Called when a photo was removed
+         *
+         * @param removed the removed photo
+         */
+        void photoRemoved(Photo removed);
+
+        /**
+         * Called when the thumbnail of a photo was loaded or created
+         *
+         * @param photo the photo whose thumbnail is now available
+         */
+        void thumbnailLoaded(Photo photo);
+    }
+
+    /**
+     * Constructor for a photo repository, which is empty until it is opened
+     *
+     * @param storage where the photos and their metadata are kept
+     */
+    public PhotoRepository(PhotoStorage storage) {
+        this.storage = storage;
+        this.importPipeline = new ImportPipeline(storage.getPaths(), hashIndex);
+        Metrics.gauge("refresh.pending", pendingRefreshGauge);
+    }
+
+    /**
+     * Adds a listener which is told about changes to the repository
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Reads in all the photos in the storage. Only the names are read here, photos which have
+     * stored metadata keep their date added, description and tags. Background workers then create
+     * the thumbnails and metadata of new and changed files. The thumbnails of all other photos are
+     * only loaded when they are requested, and the full size images when they are needed.
+     *
+     * @return the number of photos in the repository
+     */
+    public int open() {
+        Map<String, Photo> catalogued = storage.loadMetadata();
+        List<Photo> added = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (String name : storage.listPhotoNames()) {
+                Photo catalogPhoto = catalogued.remove(name);
+                Photo toAdd = catalogPhoto != null ? catalogPhoto : new Photo(name);
+                if (photos.putIfAbsent(name, toAdd) == null) {
+                    photosById.put(toAdd.getId(), toAdd);
+                    indexPhoto(toAdd);
+                    added.add(toAdd);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        refreshLater(added);
+
+        // whatever is left in the catalog was deleted while the repository was not open
+        for (String deletedName : catalogued.keySet()) {
+            storage.removeMetadata(deletedName);
+        }
+        fireAdded(added);
+        return size();
+    }
+
+    /**
+     * Starts watching the storage for photos which are added, changed or deleted by other
+     * programs, so they are picked up without reading in all the photos again
+     *
+     * @throws IOException if the folder of the photos cannot be watched
+     */
+    public void startWatching() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watcher = new PhotoFolderWatcher(storage.getPaths().getImageDirectory(), new PhotoFolderWatcher.Listener() {
+            @Override
+            public void photosChanged(Set<String> present, Set<String> deleted) {
+                sync(present, deleted);
+            }
+
+            @Override
+            public void rescanNeeded() {
+                rescan();
+            }
+        });
+    }
+
+    /**
+     * Applies changes which were made to the storage by other programs. New photos are added and
+     * get their thumbnails, changed photos get new metadata and thumbnails, and deleted photos are
+     * removed along with their thumbnails and metadata. Photos which are being imported by the
+     * repository itself are left to the import.
+     *
+     * @param present the names of the photos which were added or changed
+     * @param deleted the names of the photos which were deleted
+     */
+    public void sync(Collection<String> present, Collection<String> deleted) {
+        List<Photo> added = new ArrayList<>();
+        List<Photo> toRefresh = new ArrayList<>();
+        List<Photo> removed = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (String name : deleted) {
+                Photo photo = photos.remove(name);
+                if (photo != null) {
+                    photosById.remove(photo.getId());
+                    unindexPhoto(photo);
+                    removed.add(photo);
+                }
+            }
+            for (String name : present) {
+                Photo photo = photos.get(name);
+                if (photo == null && !importPipeline.isImporting(name)) {
+                    photo = new Photo(name);
+                    photos.put(name, photo);
+                    photosById.put(photo.getId(), photo);
+                    indexPhoto(photo);
+                    added.add(photo);
+                }
+                if (photo != null) {
+                    toRefresh.add(photo);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (Photo photo : removed) {
+            photo.deleteThumbnail();
+            photo.unloadImage();
+            storage.removeMetadata(photo.getName());
+            firePhotoRemoved(photo);
+        }
+        refreshLater(toRefresh);
+        fireAdded(added);
+    }
+
+    /**
+     * Starts importing files into the repository. Directories are searched recursively for jpeg
+     * files. Returns immediately, the imported photos are added to the repository in batches.
+     *
+     * @param sources the files and directories to import
+     * @param progress the listener to tell about the progress of the import
+     */
+    public void importFiles(List<Path> sources, ImportPipeline.Listener progress) {
+        importPipeline.importFiles(sources, new ImportPipeline.Listener() {
+            @Override
+            public void photosImported(List<Photo> imported) {
+                storage.storeMetadata(imported);
+                lock.writeLock().lock();
+                try {
+                    for (Photo photo : imported) {
+                        photos.put(photo.getName(), photo);
+                        photosById.put(photo.getId(), photo);
+                        tagIndex.addPhoto(photo);
+                        similarIndex.add(photo);
+                        sortedIndex.add(photo);
+                        searchIndex.add(photo);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                fireAdded(imported);
+                progress.photosImported(imported);
+            }
+
+            @Override
+            public void progress(int completed, int total) {
+                progress.progress(completed, total);
+            }
+
+            @Override
+            public void duplicateSkipped(Path source, Photo existing) {
+                progress.duplicateSkipped(source, existing);
+            }
+
+            @Override
+            public void importFailed(Path source, IOException reason) {
+                progress.importFailed(source, reason);
+            }
+        });
+    }
+
+    /**
+     * Deletes a photo from the repository and from the storage
+     *
+     * @param photo the photo to delete
+     * @return true if the photo was deleted, false if it is not in the repository or could not be
+     *         deleted from the storage
+     */
+    public boolean remove(Photo photo) {
+        if (!contains(photo) || !storage.delete(photo)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            // the watcher can see the file go and sync the photo away first, it is cleaned up once
+            if (!photos.remove(photo.getName(), photo)) {
+                return true;
+            }
+            photosById.remove(photo.getId());
+            unindexPhoto(photo);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        photo.unloadImage();
+        storage.removeMetadata(photo.getName());
+        firePhotoRemoved(photo);
+        return true;
+    }
+
+    /**
+     * Deletes a photo in the background, so the caller does not wait for the disk
+     *
+     * @param photo the photo to delete
+     * @return completes with the result of remove
+     */
+    public CompletableFuture<Boolean> removeLater(Photo photo) {
+        return CompletableFuture.supplyAsync(() -> remove(photo), io);
+    }
+
+    /**
+     * Reads a preview of a photo in the background, see Photo.getPreview. The preview is decoded on
+     * the decoding threads, which only decode as many photos at once as there are cores. The
+     * caller never waits for them, not even when they are busy.
+     *
+     * @param photo the photo to read a preview of
+     * @param maxWidth the maximum width of the preview
+     * @param maxHeight the maximum height of the preview
+     * @return completes with the preview, or null if the photo could not be read
+     */
+    public CompletableFuture<Image> loadPreview(Photo photo, int maxWidth, int maxHeight) {
+        CompletableFuture<Image> preview = new CompletableFuture<>();
+        // handing the work to busy decoding threads waits, which is done on an I/O thread
+        io.execute(() -> decoder.execute(() -> {
+            try {
+                preview.complete(photo.getPreview(maxWidth, maxHeight));
+            } catch (RuntimeException e) {
+                preview.completeExceptionally(e);
+            }
+        }));
+        return preview;
+    }
+
+    /**
+     * Loads the thumbnails of photos in the background, most important first. Every call replaces
+     * the photos of the previous call, so thumbnails which are no longer needed (for example
+     * because they were scrolled past) are not loaded. Listeners are told about every loaded
+     * thumbnail.
+     *
+     * @param wanted the photos whose thumbnails should be loaded, most important first
+     */
+    public void requestThumbnails(List<Photo> wanted) {
+        thumbnailLoader.request(wanted);
+    }
+
+    /**
+     * Gets a photo by its name
+     *
+     * @param name the name of the photo
+     * @return the photo or null if there is no photo with that name
+     */
+    public Photo get(String name) {
+        lock.readLock().lock();
+        try {
+            return photos.get(name);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a photo by its id
+     *
+     * @param id the id of the photo
+     * @return the photo or null if there is no photo with that id
+     */
+    public Photo get(long id) {
+        return photosById.get(id);
+    }
+
+    /**
+     * @param photo the photo to look for
+     * @return true if the photo is in the repository
+     */
+    public boolean contains(Photo photo) {
+        return photosById.get(photo.getId()) == photo;
+    }
+
+    /**
+     * @return all photos, in the order they were added
+     */
+    public List<Photo> list() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(photos.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of photos in the repository
+     */
+    public int size() {
+        return photosById.size();
+    }
+
+    /**
+     * Lists a page of photos sorted by date added, name or file size, see SortedPhotoIndex. The
+     * photos are kept sorted as they are added and removed, so this does not sort anything.
+     *
+     * @param cursor where the page starts, from SortedPhotoIndex.Cursor or the previous page
+     * @param limit the maximum number of photos on the page
+     * @return the photos from the cursor on and the cursor of the next page
+     */
+    public SortedPhotoIndex.Page listSorted(SortedPhotoIndex.Cursor cursor, int limit) {
+        return sortedIndex.page(cursor, limit);
+    }
+
+    /**
+     * Finds the photos matching a tag filter, see TagIndex.filter
+     *
+     * @param tagFilter the words to filter the tags by
+     * @return the matching photos, or all photos if the filter is empty
+     */
+    public List<Photo> query(String tagFilter) {
+        if (tagFilter.trim().isEmpty()) {
+            return list();
+        }
+        return tagIndex.filter(tagFilter);
+    }
+
+    /**
+     * Finds the photos whose name or description match a query, see SearchIndex.search
+     *
+     * @param query the words to search for
+     * @return the matching photos, or all photos if the query is empty
+     */
+    public List<Photo> search(String query) {
+        return searchIndex.search(query);
+    }
+
+    /**
+     * Finds the photos which look like a photo
+     *
+     * @param photo the photo to compare with
+     * @param maxDistance the number of bits the perceptual hashes may differ in
+     * @return the similar photos without the photo itself, closest first
+     */
+    public List<Photo> similarTo(Photo photo, int maxDistance) {
+        return similarIndex.similarTo(photo, maxDistance);
+    }
+
+    /**
+     * Changes the description of a photo, indexes it for searching and stores it
+     *
+     * @param photo the photo to describe
+     * @param description the new description, or null for none
+     */
+    public void setDescription(Photo photo, String description) {
+        photo.setDescription(description);
+        // photos are removed under the write lock, so a photo which is deleted now is not indexed again
+        lock.readLock().lock();
+        try {
+            if (contains(photo)) {
+                searchIndex.add(photo);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        storage.storeMetadata(Collections.singletonList(photo));
+    }
+
+    /**
+     * Replaces the tags of a photo and stores them. Photos which are not in the repository (any
+     * more) are left alone.
+     *
+     * @param photo the photo to tag
+     * @param tagNames the new tags, tag names are not case sensitive
+     */
+    public void setTags(Photo photo, Collection<String> tagNames) {
+        Set<String> wanted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (String tagName : tagNames) {
+            if (!tagName.trim().isEmpty()) {
+                wanted.add(tagName.trim());
+            }
+        }
+        // photos are removed under the write lock, so a photo which is deleted now is not indexed again
+        lock.readLock().lock();
+        try {
+            if (!contains(photo)) {
+                return;
+            }
+            List<String> current = new ArrayList<>();
+            for (Tag tag : photo.getTags()) {
+                current.add(tag.getName());
+            }
+            for (String tagName : current) {
+                if (!wanted.contains(tagName)) {
+                    tagIndex.untag(photo, tagName);
+                }
+            }
+            for (String tagName : wanted) {
+                tagIndex.tag(photo, tagName);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        storage.storeMetadata(Collections.singletonList(photo));
+    }
+
+    /**
+     * Gives many photos a tag and stores them in one write
+     *
+     * @param photosToTag the photos to tag
+     * @param tagName the name of the tag, not case sensitive
+     */
+    public void tagAll(Collection<Photo> photosToTag, String tagName) {
+        if (tagName.trim().isEmpty()) {
+            return;
+        }
+        List<Photo> present;
+        lock.readLock().lock();
+        try {
+            present = retainPresent(photosToTag);
+            tagIndex.tagAll(present, tagName.trim());
+        } finally {
+            lock.readLock().unlock();
+        }
+        storage.storeMetadata(present);
+    }
+
+    /**
+     * Removes a tag from many photos and stores them in one write
+     *
+     * @param photosToUntag the photos to untag
+     * @param tagName the name of the tag, not case sensitive
+     */
+    public void untagAll(Collection<Photo> photosToUntag, String tagName) {
+        List<Photo> present;
+        lock.readLock().lock();
+        try {
+            present = retainPresent(photosToUntag);
+            tagIndex.untagAll(present, tagName.trim());
+        } finally {
+            lock.readLock().unlock();
+        }
+        storage.storeMetadata(present);
+    }
+
+    /**
+     * Waits for the new and changed photos to be checked, stops the background threads and closes
+     * the storage. Requested thumbnails which are not loaded yet are dropped.
+     *
+     * @throws InterruptedException if interrupted while waiting for the background threads
+     */
+    public void close() throws InterruptedException {
+        try {
+            if (watcher != null) {
+                watcher.close();
+            }
+        } catch (IOException e) {
+            // the watcher thread stops either way
+        }
+        Metrics.removeGauge("refresh.pending", pendingRefreshGauge);
+        refresher.shutdown();
+        io.shutdown();
+        refresher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        io.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        decoder.shutdownNow();
+        thumbnailLoader.shutdown();
+        importPipeline.shutdown();
+        try {
+            storage.close();
+        } catch (IOException e) {
+            // everything was already written, there is nothing left to lose
+        }
+    }
+
+    /**
+     * Helper method which adds a photo to the indexes
+     */
+    private void indexPhoto(Photo photo) {
+        tagIndex.addPhoto(photo);
+        hashIndex.add(photo);
+        similarIndex.add(photo);
+        sortedIndex.add(photo);
+        searchIndex.add(photo);
+    }
+
+    /**
+     * Helper method which removes a photo from the indexes
+     */
+    private void unindexPhoto(Photo photo) {
+        hashIndex.remove(photo);
+        similarIndex.remove(photo);
+        tagIndex.removePhoto(photo);
+        sortedIndex.remove(photo);
+        searchIndex.remove(photo);
+    }
+
+    /**
+     * Helper method which reads in the whole storage again and applies the differences, for when
+     * the watcher lost track of the changes
+     */
+    private void rescan() {
+        Set<String> listed = new LinkedHashSet<>(storage.listPhotoNames());
+        List<String> missing = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String name : photos.keySet()) {
+                if (!listed.contains(name)) {
+                    missing.add(name);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        sync(listed, missing);
+    }
+
+    /**
+     * Helper method which has the refresh workers check photos. The photos are checked in chunks
+     * so a large repository does not queue a task for every photo.
+     */
+    private void refreshLater(List<Photo> toRefresh) {
+        for (int start = 0; start < toRefresh.size(); start += REFRESH_CHUNK_SIZE) {
+            List<Photo> chunk = toRefresh.subList(start, Math.min(toRefresh.size(), start + REFRESH_CHUNK_SIZE));
+            pendingRefreshes.addAndGet(chunk.size());
+            refresher.execute(() -> {
+                for (Photo photo : chunk) {
+                    // the storage only knows the thumbnails which were there when it was listed, so
+                    // photos imported since then, which the watcher reports as new files, are looked up
+                    refresh(photo, storage.hasThumbnail(photo.getName()) || photo.hasStoredThumbnail());
+                    pendingRefreshes.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    /**
+     * Helper method run by the refresh workers, which re-reads the metadata and thumbnail of
+     * changed files and creates missing thumbnails and perceptual hashes. Unchanged photos are
+     * left alone, their thumbnails are loaded when they are requested.
+     */
+    private void refresh(Photo photo, boolean containsThumbnail) {
+        boolean changed = photo.isFileChanged();
+        boolean hadPerceptualHash = photo.hasPerceptualHash();
+        if (!changed && containsThumbnail && hadPerceptualHash) {
+            return;
+        }
+        similarIndex.remove(photo);
+        if (changed) {
+            hashIndex.remove(photo);
+            photo.unloadImage();
+            photo.readFileInfo();
+            photo.createThumbnail();
+            storage.storeMetadata(Collections.singletonList(photo));
+        } else if (!containsThumbnail) {
+            photo.createThumbnail();
+        } else {
+            photo.loadThumbnail();
+        }
+        // photos are removed under the write lock, so a photo which is deleted now is not indexed again
+        boolean present;
+        lock.readLock().lock();
+        try {
+            present = contains(photo);
+            if (present) {
+                hashIndex.add(photo);
+                similarIndex.add(photo);
+                if (changed) {
+                    // moves the photo to its new file size
+                    sortedIndex.add(photo);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!present) {
+            // deleted while its thumbnail was loading, the metadata stored above must not outlive it
+            storage.removeMetadata(photo.getName());
+            return;
+        }
+        if (!hadPerceptualHash && photo.hasPerceptualHash()) {
+            storage.storeMetadata(Collections.singletonList(photo));
+            if (!contains(photo)) {
+                storage.removeMetadata(photo.getName());
+            }
+        }
+        fireThumbnailLoaded(photo);
+    }
+
+    /**
+     * Helper method which drops the photos which are not in the repository (any more). Called
+     * under the read lock, so none of the photos it keeps can be removed until it is released.
+     */
+    private List<Photo> retainPresent(Collection<Photo> candidates) {
+        List<Photo> present = new ArrayList<>(candidates.size());
+        for (Photo photo : candidates) {
+            if (contains(photo)) {
+                present.add(photo);
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Helper method which tells the listeners about a removed photo
+     */
+    private void firePhotoRemoved(Photo photo) {
+        for (Listener listener : listeners) {
+            listener.photoRemoved(photo);
+        }
+    }
+
+    /**
+     * Helper method which tells the listeners about a loaded thumbnail
+     */
+    private void fireThumbnailLoaded(Photo photo) {
+        for (Listener listener : listeners) {
+            listener.thumbnailLoaded(photo);
+        }
+    }
+
+    /**
+     * Helper method which tells the listeners about added photos
+     */
+    private void fireAdded(List<Photo> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        List<Photo> unmodifiable = Collections.unmodifiableList(added);
+        for (Listener listener : listeners) {
+            listener.photosAdded(unmodifiable);
+        }
+    }
+}
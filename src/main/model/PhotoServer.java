@@ -0,0 +1,741 @@
+package model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A small HTTP/1.1 server which lets other programs read the repository:
+ *
+ * GET /photos lists the photos as JSON, by date added unless ?order=name or ?order=size is given,
+ * reversed with ?desc=true, at most ?limit=n of them, or only those matching ?tag=words.
+ * GET /photos/name.jpg sends the image file of a photo.
+ * GET /thumbnails/name.jpg sends its grid thumbnail, ?size=256 a larger level of the pyramid.
+ *
+ * Files are sent with FileChannel.transferTo, which hands the copying to the operating system
+ * (sendfile on Linux), so the bytes of a photo never pass through the Java heap. Single byte
+ * ranges are supported, and every file has an ETag and Last-Modified header made from its size
+ * and modification time, so clients can revalidate their copy with a 304 instead of downloading
+ * it again. Connections are kept alive and each one is served on a thread of an I/O executor.
+ * A connection which sends no complete request within the idle timeout is closed, and so is one
+ * which does not take the next chunk of a response within it. Connections beyond the limit are
+ * answered with 503, so idle or stalled clients cannot use up the threads.
+ * HEAD works wherever GET does, other methods are refused.
+ */
+public class PhotoServer implements Closeable {
+    private static final int MAX_HEAD_LENGTH = 16 * 1024;
+    // responses are written in chunks, each of which has to be taken by the client within the idle timeout
+    private static final int WRITE_CHUNK = 256 * 1024;
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 30 * 1000;
+    private static final byte[] BUSY = ("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\n"
+            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    private static final String JPEG = "image/jpeg";
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final PhotoRepository repository;
+    private final ServerSocketChannel serverChannel;
+    private final int maxConnections;
+    private final int idleTimeoutMillis;
+    private final ExecutorService connectionExecutor = TaskExecutors.newIoExecutor("photo-server-connection");
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    // when the chunk each connection is writing has to be written by, in System.nanoTime
+    private final Map<SocketChannel, Long> writeDeadlines = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watchdog =
+            Executors.newSingleThreadScheduledExecutor(TaskExecutors.daemonThreads("photo-server-watchdog"));
+    private final LongSupplier connectionGauge = () -> connections.size();
+
+    /**
+     * Writes the body of a response, or the requested range of it
+     */
+    private interface Body {
+        void write(SocketChannel client, long position, long count) throws IOException;
+    }
+
+    /**
+     * Constructor for a server which starts accepting connections right away
+     *
+     * @param repository the repository to serve the photos of
+     * @param address the address to listen on, port 0 picks a free port
+     * @throws IOException if the address could not be bound
+     */
+    public PhotoServer(PhotoRepository repository, InetSocketAddress address) throws IOException {
+        this(repository, address, DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor for a server which starts accepting connections right away
+     *
+     * @param repository the repository to serve the photos of
+     * @param address the address to listen on, port 0 picks a free port
+     * @param maxConnections the number of connections which are served at the same time
+     * @param idleTimeoutMillis how long a connection may take to send its next request, or to
+     *                          take the next chunk of a response
+     * @throws IOException if the address could not be bound
+     */
+    public PhotoServer(PhotoRepository repository, InetSocketAddress address, int maxConnections,
+                       int idleTimeoutMillis) throws IOException {
+        this.repository = repository;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        Metrics.gauge("server.connections", connectionGauge);
+        long checkPeriod = Math.max(10, idleTimeoutMillis / 4);
+        watchdog.scheduleWithFixedDelay(this::closeStalledConnections, checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+        TaskExecutors.daemonThreads("photo-server").newThread(this::acceptConnections).start();
+    }
+
+    /**
+     * @return the port the server listens on
+     * @throws IOException if the server was closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones, responses which are being sent are
+     * cut off
+     */
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        for (SocketChannel connection : connections) {
+            connection.close();
+        }
+        connectionExecutor.shutdown();
+        watchdog.shutdownNow();
+        Metrics.removeGauge("server.connections", connectionGauge);
+    }
+
+    /**
+     * Helper method run by the acceptor thread, which hands every connection to a thread of its
+     * own, or turns it away if the server is already serving as many connections as it may
+     */
+    private void acceptConnections() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                if (connections.size() >= maxConnections) {
+                    try (SocketChannel busy = client) {
+                        busy.write(ByteBuffer.wrap(BUSY));
+                    }
+                    continue;
+                }
+                connections.add(client);
+                connectionExecutor.execute(() -> serve(client));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // the client went away before it was accepted
+            }
+        }
+    }
+
+    /**
+     * Helper method run by the watchdog, which closes the connections whose client did not take a
+     * chunk of a response within the idle timeout. The blocked write then fails and the thread of
+     * the connection is free again.
+     */
+    private void closeStalledConnections() {
+        long now = System.nanoTime();
+        for (Map.Entry<SocketChannel, Long> entry : writeDeadlines.entrySet()) {
+            if (now - entry.getValue() > 0) {
+                try {
+                    entry.getKey().close();
+                } catch (IOException e) {
+                    // the channel is closed either way
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method which answers the requests of one connection until either side closes it
+     */
+    private void serve(SocketChannel client) {
+        try (SocketChannel connection = client) {
+            RequestReader reader = new RequestReader(connection, idleTimeoutMillis);
+            boolean keepAlive = true;
+            while (keepAlive) {
+                Request request = reader.next();
+                if (request == null) {
+                    return;
+                }
+                Metrics.Sample sample = Metrics.SERVE.start(request.target);
+                try {
+                    keepAlive = respond(connection, request);
+                    sample.stop();
+                } catch (IOException e) {
+                    sample.fail(e);
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away or sent something which is not HTTP
+        } finally {
+            connections.remove(client);
+        }
+    }
+
+    /**
+     * Helper method which answers one request
+     *
+     * @return true if the connection can be used for another request
+     */
+    private boolean respond(SocketChannel client, Request request) throws IOException {
+        if (!request.isValid()) {
+            request.keepAlive = false;
+            sendText(client, request, 400, "Bad Request");
+        } else if (!request.method.equals("GET") && !request.method.equals("HEAD")) {
+            // the body of the request is not read, so the connection cannot be used again
+            request.keepAlive = false;
+            sendText(client, request, 405, "Method Not Allowed");
+        } else if (request.path.equals("/photos") || request.path.equals("/photos/")) {
+            sendList(client, request);
+        } else if (request.path.startsWith("/photos/")) {
+            sendImage(client, request, repository.get(photoName(request.path, "/photos/")));
+        } else if (request.path.startsWith("/thumbnails/")) {
+            sendThumbnail(client, request, repository.get(photoName(request.path, "/thumbnails/")));
+        } else {
+            sendText(client, request, 404, "Not Found");
+        }
+        return request.keepAlive;
+    }
+
+    /**
+     * Helper method which sends the list of photos as a JSON array
+     */
+    private void sendList(SocketChannel client, Request request) throws IOException {
+        String tag = request.query.get("tag");
+        int limit;
+        SortedPhotoIndex.Order order;
+        try {
+            limit = Integer.parseInt(request.query.getOrDefault("limit", Integer.toString(Integer.MAX_VALUE)));
+            order = parseOrder(request.query.getOrDefault("order", "date"));
+        } catch (IllegalArgumentException e) {
+            sendText(client, request, 400, "Bad Request");
+            return;
+        }
+        List<Photo> photos;
+        if (tag != null) {
+            photos = repository.query(tag);
+            photos = photos.subList(0, Math.min(Math.max(limit, 0), photos.size()));
+        } else {
+            boolean descending = Boolean.parseBoolean(request.query.get("desc"));
+            photos = repository.listSorted(SortedPhotoIndex.Cursor.first(order, descending), Math.max(limit, 0)).getPhotos();
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (Photo photo : photos) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(photo.getId())
+                    .append(",\"name\":").append(jsonString(photo.getName()))
+                    .append(",\"dateAdded\":").append(photo.getDateAdded() == null ? 0 : photo.getDateAdded().getTime())
+                    .append(",\"width\":").append(photo.getWidth())
+                    .append(",\"height\":").append(photo.getHeight())
+                    .append(",\"fileSize\":").append(photo.getFileSize())
+                    .append(",\"tags\":[");
+            List<Tag> tags = new ArrayList<>(photo.getTags());
+            for (int i = 0; i < tags.size(); i++) {
+                json.append(i > 0 ? "," : "").append(jsonString(tags.get(i).getName()));
+            }
+            json.append("]}");
+        }
+        json.append("]\n");
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        writeHead(client, request, 200, "application/json; charset=utf-8", bytes.length, null);
+        writeBody(client, request, ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Helper method which sends the image file of a photo
+     */
+    private void sendImage(SocketChannel client, Request request, Photo photo) throws IOException {
+        if (photo == null) {
+            sendText(client, request, 404, "Not Found");
+        } else {
+            sendFile(client, request, photo.getImageFile());
+        }
+    }
+
+    /**
+     * Helper method which sends a level of the thumbnail pyramid of a photo, from the thumbnail
+     * pack if one is used. Thumbnails in the pack are small and read into memory, they get their
+     * validators from the photo they were made from.
+     */
+    private void sendThumbnail(SocketChannel client, Request request, Photo photo) throws IOException {
+        int size = Photo.getThumbnailSizes()[0];
+        try {
+            size = Integer.parseInt(request.query.getOrDefault("size", Integer.toString(size)));
+        } catch (NumberFormatException e) {
+            size = -1;
+        }
+        boolean isLevel = false;
+        for (int level : Photo.getThumbnailSizes()) {
+            isLevel |= level == size;
+        }
+        if (photo == null || !isLevel) {
+            sendText(client, request, 404, "Not Found");
+            return;
+        }
+        // the larger levels of photos whose thumbnail came from their EXIF data are made on first use
+        photo.ensureThumbnailLevel(size);
+        byte[] packed = photo.readPackedThumbnail(size);
+        if (packed == null) {
+            sendFile(client, request, photo.getThumbnailFile(size));
+            return;
+        }
+        long lastModified = photo.getLastModified();
+        String etag = "\"p" + Long.toHexString(packed.length) + "-" + Long.toHexString(lastModified) + "-" + size + "\"";
+        sendContent(client, request, packed.length, etag, lastModified, (target, position, count) ->
+                writeBody(target, request, ByteBuffer.wrap(packed, (int) position, (int) count)));
+    }
+
+    /**
+     * Helper method which sends a file, or the requested range of it, straight from the file to
+     * the socket
+     */
+    private void sendFile(SocketChannel client, Request request, Path file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            sendText(client, request, 404, "Not Found");
+            return;
+        }
+        try (FileChannel content = channel) {
+            long length = content.size();
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+            sendContent(client, request, length, etag, lastModified, (target, position, count) -> {
+                long end = position + count;
+                while (position < end) {
+                    long sent;
+                    expectProgress(target);
+                    try {
+                        sent = content.transferTo(position, Math.min(end - position, WRITE_CHUNK), target);
+                    } finally {
+                        writeDeadlines.remove(target);
+                    }
+                    if (sent <= 0) {
+                        throw new EOFException(file + " became shorter while it was sent");
+                    }
+                    position += sent;
+                }
+            });
+        }
+    }
+
+    /**
+     * Helper method which answers a request for content with the given validators: not modified,
+     * the whole content, a range of it, or range not satisfiable
+     */
+    private void sendContent(SocketChannel client, Request request, long length, String etag,
+                             long lastModified, Body body) throws IOException {
+        Map<String, String> validators = new HashMap<>();
+        validators.put("ETag", etag);
+        validators.put("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(lastModified)));
+        validators.put("Accept-Ranges", "bytes");
+        validators.put("Cache-Control", "no-cache");
+        if (isNotModified(request, etag, lastModified)) {
+            writeHead(client, request, 304, null, -1, validators);
+            return;
+        }
+
+        long[] range = null;
+        String ifRange = request.headers.get("if-range");
+        if (ifRange == null || ifRange.equals(etag) || ifRange.equals(validators.get("Last-Modified"))) {
+            range = parseRange(request.headers.get("range"), length);
+        }
+        if (range == UNSATISFIABLE) {
+            validators.put("Content-Range", "bytes */" + length);
+            writeHead(client, request, 416, null, 0, validators);
+        } else if (range != null) {
+            validators.put("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            writeHead(client, request, 206, JPEG, range[1] - range[0] + 1, validators);
+            if (!"HEAD".equals(request.method)) {
+                body.write(client, range[0], range[1] - range[0] + 1);
+            }
+        } else {
+            writeHead(client, request, 200, JPEG, length, validators);
+            if (!"HEAD".equals(request.method)) {
+                body.write(client, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Helper method which sends a short plain text response, mostly errors
+     */
+    private void sendText(SocketChannel client, Request request, int status, String text) throws IOException {
+        byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        writeHead(client, request, status, "text/plain; charset=utf-8", bytes.length, null);
+        writeBody(client, request, ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Helper method which writes the status line and headers of a response
+     *
+     * @param contentLength the length of the body, -1 for responses without a body
+     */
+    private void writeHead(SocketChannel client, Request request, int status, String contentType,
+                           long contentLength, Map<String, String> headers) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        head.append("Date: ").append(HTTP_DATE.format(Instant.now())).append("\r\n");
+        if (contentType != null) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        if (contentLength >= 0) {
+            head.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        if (!request.keepAlive) {
+            head.append("Connection: close\r\n");
+        }
+        head.append("\r\n");
+        writeFully(client, ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Helper method which writes a body held in memory, unless the request was a HEAD request
+     */
+    private void writeBody(SocketChannel client, Request request, ByteBuffer body) throws IOException {
+        if (!"HEAD".equals(request.method)) {
+            writeFully(client, body);
+        }
+    }
+
+    /**
+     * Helper method which writes a whole buffer to a blocking channel, a chunk at a time
+     */
+    private void writeFully(SocketChannel client, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.limit(Math.min(buffer.limit(), buffer.position() + WRITE_CHUNK));
+            expectProgress(client);
+            try {
+                while (chunk.hasRemaining()) {
+                    client.write(chunk);
+                }
+            } finally {
+                writeDeadlines.remove(client);
+            }
+            buffer.position(chunk.position());
+        }
+    }
+
+    /**
+     * Helper method which has the watchdog close the connection if the chunk which is written next
+     * is not written within the idle timeout
+     */
+    private void expectProgress(SocketChannel client) {
+        writeDeadlines.put(client, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis));
+    }
+
+    /**
+     * Helper method which checks the conditional headers of a request. If-None-Match takes
+     * precedence over If-Modified-Since, as the ETag is the more precise of the two.
+     */
+    private static boolean isNotModified(Request request, String etag, long lastModified) {
+        String ifNoneMatch = request.headers.get("if-none-match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.headers.get("if-modified-since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = Instant.from(HTTP_DATE.parse(ifModifiedSince.trim())).getEpochSecond();
+                return lastModified / 1000 <= since;
+            } catch (DateTimeParseException e) {
+                // invalid dates are ignored
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method which parses a Range header. Only a single range of bytes is supported, for
+     * anything else the whole content is sent, which the HTTP specification allows.
+     *
+     * @return the first and last byte of the range, null to send everything or UNSATISFIABLE
+     */
+    private static long[] parseRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        try {
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix < 0) {
+                    return null;
+                }
+                return suffix == 0 || length == 0 ? UNSATISFIABLE : new long[]{Math.max(0, length - suffix), length - 1};
+            } else if (dash > 0) {
+                long first = Long.parseLong(spec.substring(0, dash));
+                long last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                if (first < 0 || last < first) {
+                    return null;
+                }
+                return first >= length ? UNSATISFIABLE : new long[]{first, Math.min(last, length - 1)};
+            }
+        } catch (NumberFormatException e) {
+            // invalid ranges are ignored
+        }
+        return null;
+    }
+
+    /**
+     * Helper method which reads the name of a photo from a path, with or without the file extension
+     */
+    private static String photoName(String path, String prefix) {
+        String name = path.substring(prefix.length());
+        return name.endsWith(".jpg") ? name.substring(0, name.length() - ".jpg".length()) : name;
+    }
+
+    /**
+     * Helper method which parses the order of the photo list
+     */
+    private static SortedPhotoIndex.Order parseOrder(String order) {
+        switch (order) {
+            case "date":
+                return SortedPhotoIndex.Order.DATE_ADDED;
+            case "name":
+                return SortedPhotoIndex.Order.NAME;
+            case "size":
+                return SortedPhotoIndex.Order.FILE_SIZE;
+            default:
+                throw new IllegalArgumentException("Unknown order " + order);
+        }
+    }
+
+    /**
+     * Helper method which quotes a string for JSON
+     */
+    private static String jsonString(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Helper method which gets the reason phrase of the status codes the server sends
+     */
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 206:
+                return "Partial Content";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 416:
+                return "Range Not Satisfiable";
+            default:
+                return "Error";
+        }
+    }
+
+    /**
+     * Helper method which decodes a percent encoded part of a request target as UTF-8
+     *
+     * @throws IllegalArgumentException if the part is not validly encoded
+     */
+    private static String urlDecode(String encoded) {
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // every java platform is required to support UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Helper class for a parsed request line and headers. Header names are kept in lower case.
+     */
+    private static final class Request {
+        private String method;
+        private String target;
+        private String path;
+        private final Map<String, String> query = new HashMap<>();
+        private final Map<String, String> headers = new HashMap<>();
+        private boolean keepAlive;
+
+        /**
+         * Parses the head of a request, requests which cannot be parsed are not valid
+         */
+        Request(String head) {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                target = lines[0];
+                return;
+            }
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+                }
+            }
+            String connection = headers.getOrDefault("connection", "");
+            keepAlive = requestLine[2].equals("HTTP/1.0") ? connection.equalsIgnoreCase("keep-alive")
+                    : !connection.equalsIgnoreCase("close");
+
+            target = requestLine[1];
+            int questionMark = target.indexOf('?');
+            try {
+                // a plus in the path is a plus, only the query encodes spaces with it
+                path = urlDecode((questionMark < 0 ? target : target.substring(0, questionMark)).replace("+", "%2B"));
+                if (questionMark >= 0) {
+                    for (String parameter : target.substring(questionMark + 1).split("&")) {
+                        int equals = parameter.indexOf('=');
+                        if (equals > 0) {
+                            query.put(urlDecode(parameter.substring(0, equals)), urlDecode(parameter.substring(equals + 1)));
+                        }
+                    }
+                }
+                method = requestLine[0];
+            } catch (IllegalArgumentException e) {
+                path = null;
+            }
+        }
+
+        boolean isValid() {
+            return method != null && path != null;
+        }
+    }
+
+    /**
+     * Helper class which reads the heads of the requests on a connection. Bytes read past the end
+     * of a head are kept for the next request, so pipelined requests are not lost.
+     */
+    private static final class RequestReader {
+        private final Socket socket;
+        private final InputStream input;
+        private final int timeoutMillis;
+        private final ByteBuffer buffer = ByteBuffer.allocate(MAX_HEAD_LENGTH);
+
+        /**
+         * Reads through the stream of the socket, as reads from a blocking channel ignore the
+         * socket timeout
+         */
+        RequestReader(SocketChannel channel, int timeoutMillis) throws IOException {
+            this.socket = channel.socket();
+            this.input = socket.getInputStream();
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * @return the next request, or null if the client closed the connection
+         * @throws IOException if the connection failed, the head of the request is too long or
+         *         it was not read completely within the timeout
+         */
+        Request next() throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            int end;
+            while ((end = headEnd()) < 0) {
+                if (!buffer.hasRemaining()) {
+                    throw new IOException("Request head is longer than " + MAX_HEAD_LENGTH + " bytes");
+                }
+                // the whole head has to arrive in time, not just every single byte of it
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    throw new SocketTimeoutException("No request within " + timeoutMillis + " ms");
+                }
+                socket.setSoTimeout((int) Math.min(left, Integer.MAX_VALUE));
+                int read = input.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (read < 0) {
+                    return null;
+                }
+                buffer.position(buffer.position() + read);
+            }
+            byte[] bytes = buffer.array();
+            String head = new String(bytes, 0, end, StandardCharsets.ISO_8859_1);
+            int remaining = buffer.position() - end - 4;
+            System.arraycopy(bytes, end + 4, bytes, 0, remaining);
+            buffer.position(remaining);
+            return new Request(head);
+        }
+
+        /**
+         * Helper method which finds the empty line ending the head
+         *
+         * @return the index of the line break before the empty line, or -1 if it was not read yet
+         */
+        private int headEnd() {
+            byte[] bytes = buffer.array();
+            for (int i = 0; i + 3 < buffer.position(); i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package model;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the photo repository keeps its photos and their metadata. The repository only talks to
+ * its storage through this interface, so it does not care whether the photos are kept in folders
+ * on disk or somewhere else. Failing to store metadata is not an error, the metadata is read from
+ * the photo files again when it is missing.
+ */
+public interface PhotoStorage extends Closeable {
+    /**
+     * @return where the files of the photos are, new photos are imported there
+     */
+    PhotoPaths getPaths();
+
+    /**
+     * Lists the photos in the storage
+     *
+     * @return the names of the photos, or no names if the storage could not be read
+     */
+    List<String> listPhotoNames();
+
+    /**
+     * Checks whether a thumbnail is stored for a photo, as of the last call to listPhotoNames
+     *
+     * @param name the name of the photo
+     * @return true if a thumbnail is stored for the photo
+     */
+    boolean hasThumbnail(String name);
+
+    /**
+     * Deletes a photo and its thumbnail
+     *
+     * @param photo the photo to delete
+     * @return true if the photo was deleted
+     */
+    boolean delete(Photo photo);
+
+    /**
+     * Loads the metadata which was stored for the photos
+     *
+     * @return the photos with their stored metadata by name, or no photos if the metadata could
+     *         not be read
+     */
+    Map<String, Photo> loadMetadata();
+
+    /**
+     * Stores or updates the metadata of photos
+     *
+     * @param photos the photos to store
+     */
+    void storeMetadata(List<Photo> photos);
+
+    /**
+     * Removes the metadata of a photo
+     *
+     * @param name the name of the photo
+     */
+    void removeMetadata(String name);
+}
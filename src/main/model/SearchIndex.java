@@ -0,0 +1,297 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A full text index over the names and descriptions of the photos. The text is split into words
+ * of letters and digits, ignoring case, and every word is broken into trigrams: overlapping runs of
+ * three characters, padded at the start of the word so words of one or two characters have
+ * trigrams too. Every trigram keeps the sorted numbers of the photos which contain it.
+ *
+ * A search word of three or more characters matches the photos with a word containing it, a
+ * shorter search word the photos with a word starting with it. Searching intersects the trigram
+ * postings of the search words starting with the shortest one, so only the photos which have every
+ * trigram are looked at, never the whole repository. Having every trigram of a word does not mean
+ * having the word, so these few candidates are then checked against their text.
+ */
+public class SearchIndex {
+    private static final char PAD = '\u0001';
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Photo, Integer> numbers = new HashMap<>();
+    private final List<Photo> photos = new ArrayList<>();
+    // the words of every photo joined with spaces, the same index as photos
+    private final List<String> texts = new ArrayList<>();
+    private final BitSet freeNumbers = new BitSet();
+    private final Map<Long, Posting> postings = new HashMap<>();
+
+    /**
+     * Adds a photo to the index, or indexes its text again if it was added before, such as after
+     * its description changed
+     *
+     * @param photo the photo to add
+     */
+    public void add(Photo photo) {
+        String text = String.join(" ", words(photo.getName() + " "
+                + (photo.getDescription() == null ? "" : photo.getDescription())));
+        lock.writeLock().lock();
+        try {
+            Integer number = numbers.get(photo);
+            if (number != null) {
+                if (texts.get(number).equals(text)) {
+                    return;
+                }
+                unpost(number, texts.get(number));
+            } else {
+                number = freeNumbers.isEmpty() ? photos.size() : freeNumbers.nextSetBit(0);
+                if (number == photos.size()) {
+                    photos.add(photo);
+                    texts.add(text);
+                } else {
+                    photos.set(number, photo);
+                    freeNumbers.clear(number);
+                }
+                numbers.put(photo, number);
+            }
+            texts.set(number, text);
+            for (long gram : textGrams(text)) {
+                postings.computeIfAbsent(gram, key -> new Posting()).add(number);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a photo from the index
+     *
+     * @param photo the photo to remove
+     */
+    public void remove(Photo photo) {
+        lock.writeLock().lock();
+        try {
+            Integer number = numbers.remove(photo);
+            if (number == null) {
+                return;
+            }
+            unpost(number, texts.get(number));
+            photos.set(number, null);
+            texts.set(number, null);
+            freeNumbers.set(number);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the photos whose name or description match every word of a query
+     *
+     * @param query the words to search for, for example "dog beach"
+     * @return the matching photos, or all photos if the query has no words
+     */
+    public List<Photo> search(String query) {
+        List<String> queryWords = words(query);
+        lock.readLock().lock();
+        try {
+            List<Photo> result = new ArrayList<>();
+            if (queryWords.isEmpty()) {
+                for (Photo photo : photos) {
+                    if (photo != null) {
+                        result.add(photo);
+                    }
+                }
+                return result;
+            }
+
+            List<Posting> lists = new ArrayList<>();
+            for (String word : queryWords) {
+                for (long gram : queryGrams(word)) {
+                    Posting posting = postings.get(gram);
+                    if (posting == null) {
+                        return result;
+                    }
+                    lists.add(posting);
+                }
+            }
+            lists.sort(Comparator.comparingInt(posting -> posting.size));
+            Posting shortest = lists.get(0);
+            // the candidates come in ascending order, so every other posting is only read forward
+            int[] positions = new int[lists.size()];
+            candidates:
+            for (int i = 0; i < shortest.size; i++) {
+                int number = shortest.numbers[i];
+                for (int j = 1; j < lists.size(); j++) {
+                    Posting posting = lists.get(j);
+                    positions[j] = posting.seek(number, positions[j]);
+                    if (positions[j] == posting.size) {
+                        break candidates;
+                    }
+                    if (posting.numbers[positions[j]] != number) {
+                        continue candidates;
+                    }
+                }
+                String text = texts.get(number);
+                for (String word : queryWords) {
+                    if (!matches(text, word)) {
+                        continue candidates;
+                    }
+                }
+                result.add(photos.get(number));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed photos
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return numbers.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Helper method which removes a photo number from the postings of the trigrams of its text
+     */
+    private void unpost(int number, String text) {
+        for (long gram : textGrams(text)) {
+            Posting posting = postings.get(gram);
+            if (posting != null && posting.remove(number) && posting.size == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * Helper method which checks whether the text of a candidate really has a word matching a
+     * search word
+     */
+    private static boolean matches(String text, String word) {
+        if (word.length() >= 3) {
+            return text.contains(word);
+        }
+        return text.startsWith(word) || text.contains(" " + word);
+    }
+
+    /**
+     * Helper method which splits a text into lower case words of letters and digits
+     */
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Helper method which collects the trigrams of every word of an indexed text, padded at the
+     * start of the words
+     */
+    private static Set<Long> textGrams(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (String word : text.split(" ")) {
+            if (!word.isEmpty()) {
+                addGrams(grams, PAD + "" + PAD + word);
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Helper method which gets the trigrams a search word needs: the trigrams in the word for
+     * longer words, which can be anywhere in an indexed word, or the padded ones at the start of a
+     * word for short words
+     */
+    private static Set<Long> queryGrams(String word) {
+        Set<Long> grams = new HashSet<>();
+        addGrams(grams, word.length() >= 3 ? word : PAD + "" + PAD + word);
+        return grams;
+    }
+
+    /**
+     * Helper method which adds the trigrams of a string, each packed into a long
+     */
+    private static void addGrams(Set<Long> grams, String characters) {
+        for (int i = 0; i + 3 <= characters.length(); i++) {
+            grams.add(((long) characters.charAt(i) << 32) | ((long) characters.charAt(i + 1) << 16) | characters.charAt(i + 2));
+        }
+    }
+
+    /**
+     * Helper class for the sorted numbers of the photos with a trigram. A sorted array takes four
+     * bytes per photo, where a bitset would take one bit for every photo in the index, and most
+     * trigrams are only in a few photos.
+     */
+    private static final class Posting {
+        private int[] numbers = new int[2];
+        private int size;
+
+        void add(int number) {
+            int index = Arrays.binarySearch(numbers, 0, size, number);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+            }
+            System.arraycopy(numbers, index, numbers, index + 1, size - index);
+            numbers[index] = number;
+            size++;
+        }
+
+        boolean remove(int number) {
+            int index = Arrays.binarySearch(numbers, 0, size, number);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(numbers, index + 1, numbers, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Finds the first number at or after a position which is not smaller than the given
+         * number, galloping forward from the position so skipping ahead costs the logarithm of
+         * the distance rather than of the whole posting
+         *
+         * @return the index of that number, or size if every number from the position on is smaller
+         */
+        int seek(int number, int from) {
+            int low = from;
+            int high = from;
+            int step = 1;
+            while (high < size && numbers[high] < number) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int index = Arrays.binarySearch(numbers, low, Math.min(high + 1, size), number);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An index of the perceptual hashes of photos for finding similar looking photos. The hashes are
+ * kept in a BK-tree: every node has a hash and its children are grouped by their distance to it,
+ * so by the triangle inequality a search only has to visit the children whose distance is within
+ * the search radius of the distance to the searched hash.
+ *
+ * Removing a photo only takes it off its node, the node stays in the tree to keep its children
+ * reachable. The tree is rebuilt once most of its nodes are empty.
+ */
+public class SimilarPhotoIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Photo, Node> nodesByPhoto = new HashMap<>();
+    private Node root;
+    private int nodeCount;
+    private int emptyNodeCount;
+
+    /**
+     * A photo which was found by a search, with how far its hash is from the searched hash
+     */
+    public static class Match {
+        private final Photo photo;
+        private final int distance;
+
+        Match(Photo photo, int distance) {
+            this.photo = photo;
+            this.distance = distance;
+        }
+
+        /**
+         * @return the photo which was found
+         */
+        public Photo getPhoto() {
+            return photo;
+        }
+
+        /**
+         * @return the Hamming distance between the photo's hash and the searched hash
+         */
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Adds a photo to the index. Photos without a perceptual hash are ignored.
+     *
+     * @param photo the photo to add
+     */
+    public void add(Photo photo) {
+        if (!photo.hasPerceptualHash()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!nodesByPhoto.containsKey(photo)) {
+                insert(photo, photo.getPerceptualHash());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a photo from the index
+     *
+     * @param photo the photo to remove
+     */
+    public void remove(Photo photo) {
+        lock.writeLock().lock();
+        try {
+            Node node = nodesByPhoto.remove(photo);
+            if (node == null) {
+                return;
+            }
+            node.photos.remove(photo);
+            if (node.photos.isEmpty()) {
+                emptyNodeCount++;
+                if (emptyNodeCount > nodeCount / 2) {
+                    rebuild();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of photos in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodesByPhoto.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the photos whose hash is within a distance of a hash
+     *
+     * @param hash the perceptual hash to search for
+     * @param maxDistance the largest Hamming distance a match can have
+     * @return the matches, closest first
+     */
+    public List<Match> search(long hash, int maxDistance) {
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Deque<Node> toVisit = new ArrayDeque<>();
+            if (root != null) {
+                toVisit.push(root);
+            }
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.pop();
+                int distance = PerceptualHash.distance(hash, node.hash);
+                if (distance <= maxDistance) {
+                    for (Photo photo : node.photos) {
+                        matches.add(new Match(photo, distance));
+                    }
+                }
+                for (int i = 0; i < node.childCount; i++) {
+                    if (Math.abs(node.childDistances[i] - distance) <= maxDistance) {
+                        toVisit.push(node.children[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Comparator.comparingInt(Match::getDistance));
+        return matches;
+    }
+
+    /**
+     * Finds the photos which look similar to a photo
+     *
+     * @param photo the photo to find similar photos to
+     * @param maxDistance the largest Hamming distance a match can have
+     * @return the similar photos, most similar first, not including the photo itself
+     */
+    public List<Photo> similarTo(Photo photo, int maxDistance) {
+        List<Photo> similar = new ArrayList<>();
+        if (!photo.hasPerceptualHash()) {
+            return similar;
+        }
+        for (Match match : search(photo.getPerceptualHash(), maxDistance)) {
+            if (match.getPhoto() != photo) {
+                similar.add(match.getPhoto());
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Helper method which adds a photo to the tree, to the node with the same hash if there is one
+     */
+    private void insert(Photo photo, long hash) {
+        if (root == null) {
+            root = new Node(hash);
+            nodeCount++;
+            addToNode(root, photo, true);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance == 0) {
+                addToNode(node, photo, false);
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                child = new Node(hash);
+                node.addChild(distance, child);
+                nodeCount++;
+                addToNode(child, photo, true);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Helper method which puts a photo on a node
+     *
+     * @param newNode true if the node was just created, false if it may have been emptied before
+     */
+    private void addToNode(Node node, Photo photo, boolean newNode) {
+        if (!newNode && node.photos.isEmpty()) {
+            emptyNodeCount--;
+        }
+        node.photos.add(photo);
+        nodesByPhoto.put(photo, node);
+    }
+
+    /**
+     * Helper method which builds the tree again from the photos which are still in it
+     */
+    private void rebuild() {
+        List<Photo> photos = new ArrayList<>(nodesByPhoto.keySet());
+        nodesByPhoto.clear();
+        root = null;
+        nodeCount = 0;
+        emptyNodeCount = 0;
+        for (Photo photo : photos) {
+            insert(photo, photo.getPerceptualHash());
+        }
+    }
+
+    /**
+     * Helper class for a node of the BK-tree. The children are kept in small parallel arrays
+     * rather than a map, as most nodes only have a few children.
+     */
+    private static class Node {
+        private final long hash;
+        private final List<Photo> photos = new ArrayList<>(1);
+        private int[] childDistances = new int[0];
+        private Node[] children = new Node[0];
+        private int childCount;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (childDistances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (childCount == children.length) {
+                int capacity = Math.max(2, childCount * 2);
+                childDistances = Arrays.copyOf(childDistances, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            childDistances[childCount] = distance;
+            children[childCount] = child;
+            childCount++;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Secondary indexes which keep the photos sorted by date added, by name and by file size. Photos
+ * are added to and removed from every index one at a time, so listing the photos in any of these
+ * orders never sorts the whole collection. Listings are read a page at a time: every page ends with
+ * a cursor for the next page, and a cursor can also start at a date, name or file size, which jumps
+ * straight to that place in the order.
+ *
+ * The sort keys are taken from the photo when it is added, a photo whose file changed has to be
+ * added again to move it to its new place.
+ */
+public class SortedPhotoIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Order, TreeMap<Key, Photo>> indexes = new EnumMap<>(Order.class);
+    // the keys each photo was indexed under, needed to find the photo again once its values changed
+    private final Map<Photo, Key[]> keys = new HashMap<>();
+
+    /**
+     * The orders photos can be listed in. Photos with the same date, name (ignoring case) or file
+     * size are ordered by their id, so every photo has a fixed place in every order.
+     */
+    public enum Order {
+        DATE_ADDED, NAME, FILE_SIZE;
+
+        /**
+         * @return a comparator which sorts photos in this order, oldest, A or smallest first
+         */
+        public Comparator<Photo> comparator() {
+            return (a, b) -> keyOf(a).compareTo(keyOf(b));
+        }
+
+        /**
+         * Helper method which reads the sort key of a photo for this order
+         */
+        private Key keyOf(Photo photo) {
+            switch (this) {
+                case DATE_ADDED:
+                    Date dateAdded = photo.getDateAdded();
+                    return new Key(dateAdded == null ? 0 : dateAdded.getTime(), null, photo.getId());
+                case NAME:
+                    return new Key(0, photo.getName(), photo.getId());
+                default:
+                    return new Key(photo.getFileSize(), null, photo.getId());
+            }
+        }
+    }
+
+    /**
+     * A place in one of the orders, a listing starts right at or right after it
+     */
+    public static final class Cursor {
+        private final Order order;
+        private final boolean descending;
+        private final Key key;
+        private final boolean inclusive;
+
+        private Cursor(Order order, boolean descending, Key key, boolean inclusive) {
+            this.order = order;
+            this.descending = descending;
+            this.key = key;
+            this.inclusive = inclusive;
+        }
+
+        /**
+         * @param order the order to list the photos in
+         * @param descending true to list the newest, Z or largest photos first
+         * @return a cursor at the start of the order
+         */
+        public static Cursor first(Order order, boolean descending) {
+            return new Cursor(order, descending, null, true);
+        }
+
+        /**
+         * @param date the date to start at, photos added at exactly this date are included
+         * @param descending true to list the photos added at or before the date, newest first
+         * @return a cursor at the date in the date added order
+         */
+        public static Cursor atDate(Date date, boolean descending) {
+            return at(Order.DATE_ADDED, descending, date.getTime(), null);
+        }
+
+        /**
+         * @param name the name to start at, ignoring case
+         * @param descending true to list the photos whose names come at or before the name, Z first
+         * @return a cursor at the name in the name order
+         */
+        public static Cursor atName(String name, boolean descending) {
+            return at(Order.NAME, descending, 0, name);
+        }
+
+        /**
+         * @param fileSize the file size in bytes to start at
+         * @param descending true to list the photos at most this large, largest first
+         * @return a cursor at the file size in the file size order
+         */
+        public static Cursor atFileSize(long fileSize, boolean descending) {
+            return at(Order.FILE_SIZE, descending, fileSize, null);
+        }
+
+        /**
+         * @return the order this cursor is in
+         */
+        public Order getOrder() {
+            return order;
+        }
+
+        /**
+         * @return true if the photos are listed from the end of the order
+         */
+        public boolean isDescending() {
+            return descending;
+        }
+
+        /**
+         * Helper method which creates a cursor before every photo with the given value, which is
+         * after them when listing in descending order
+         */
+        private static Cursor at(Order order, boolean descending, long number, String text) {
+            return new Cursor(order, descending, new Key(number, text, descending ? Long.MAX_VALUE : Long.MIN_VALUE), true);
+        }
+    }
+
+    /**
+     * One page of a listing
+     */
+    public static final class Page {
+        private final List<Photo> photos;
+        private final Cursor next;
+
+        private Page(List<Photo> photos, Cursor next) {
+            this.photos = photos;
+            this.next = next;
+        }
+
+        /**
+         * @return the photos on this page, in order
+         */
+        public List<Photo> getPhotos() {
+            return photos;
+        }
+
+        /**
+         * @return the cursor of the next page, or null if this is the last page
+         */
+        public Cursor getNext() {
+            return next;
+        }
+    }
+
+    /**
+     * Constructor for an empty index
+     */
+    public SortedPhotoIndex() {
+        for (Order order : Order.values()) {
+            indexes.put(order, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Adds a photo to every order, or moves it to its new places if it was added before
+     *
+     * @param photo the photo to add
+     */
+    public void add(Photo photo) {
+        lock.writeLock().lock();
+        try {
+            removeKeys(photo);
+            Key[] photoKeys = new Key[Order.values().length];
+            for (Order order : Order.values()) {
+                photoKeys[order.ordinal()] = order.keyOf(photo);
+                indexes.get(order).put(photoKeys[order.ordinal()], photo);
+            }
+            keys.put(photo, photoKeys);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a photo from every order
+     *
+     * @param photo the photo to remove
+     */
+    public void remove(Photo photo) {
+        lock.writeLock().lock();
+        try {
+            removeKeys(photo);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lists a page of photos
+     *
+     * @param cursor where the page starts, from Cursor or the previous page
+     * @param limit the maximum number of photos on the page
+     * @return the photos from the cursor on and the cursor of the next page
+     */
+    public Page page(Cursor cursor, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<Key, Photo> index = indexes.get(cursor.order);
+            if (cursor.key != null) {
+                index = cursor.descending ? index.headMap(cursor.key, cursor.inclusive)
+                        : index.tailMap(cursor.key, cursor.inclusive);
+            }
+            if (cursor.descending) {
+                index = index.descendingMap();
+            }
+
+            List<Photo> photos = new ArrayList<>(Math.min(limit, index.size()));
+            Key last = null;
+            Iterator<Map.Entry<Key, Photo>> iterator = index.entrySet().iterator();
+            while (photos.size() < limit && iterator.hasNext()) {
+                Map.Entry<Key, Photo> entry = iterator.next();
+                photos.add(entry.getValue());
+                last = entry.getKey();
+            }
+            Cursor next = last != null && iterator.hasNext() ? new Cursor(cursor.order, cursor.descending, last, false) : null;
+            return new Page(Collections.unmodifiableList(photos), next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed photos
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Helper method which removes a photo from every order under the keys it was added with
+     */
+    private void removeKeys(Photo photo) {
+        Key[] photoKeys = keys.remove(photo);
+        if (photoKeys != null) {
+            for (Order order : Order.values()) {
+                indexes.get(order).remove(photoKeys[order.ordinal()]);
+            }
+        }
+    }
+
+    /**
+     * Helper class for a sort key: a number (date or file size) or a name, and the id of the photo
+     */
+    private static final class Key implements Comparable<Key> {
+        private final long number;
+        private final String text;
+        private final long id;
+
+        Key(long number, String text, long id) {
+            this.number = number;
+            this.text = text;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Long.compare(number, other.number);
+            if (result == 0 && text != null && other.text != null) {
+                result = String.CASE_INSENSITIVE_ORDER.compare(text, other.text);
+            }
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+    }
+}
@@ -1,16 +1,32 @@
 package model;
 
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A tag object. Tags have a name and a set of photos which they are associated with
+ *
+ * The association is kept on both sides, in the tags of the photo and the photos of the tag, and
+ * can be changed from several threads at once. Both sets are concurrent sets, so readers never
+ * block and iterating over them never fails. Changing the association of one photo and one tag
+ * updates both sets under a lock which is picked by the photo and the tag from a fixed number of
+ * stripes, so the two sets always agree while different photos and tags are tagged in parallel.
  */
 public class Tag {
+    private static final int LOCK_STRIPES = 64;
+    private static final Object[] LOCKS = new Object[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
     private final String name;
-    private Set<Photo> photos = new HashSet<>();
+    private final Set<Photo> photos = ConcurrentHashMap.newKeySet();
 
     /**
      * Constructor for a Tag object
@@ -41,9 +57,10 @@ public class Tag {
      * @param photo
      */
     public void addTagToPhoto(Photo photo) {
-        if (!photos.contains(photo)) {
-            photos.add(photo);
-            photo.addTag(this);
+        synchronized (lockFor(photo, this)) {
+            if (photos.add(photo)) {
+                photo.linkTag(this);
+            }
         }
     }
 
@@ -53,12 +70,82 @@ public class Tag {
      * @param photo
      */
     public void removeTagFromPhoto(Photo photo) {
-        if (photos.contains(photo)) {
-            photos.remove(photo);
-            photo.removeTag(this);
+        synchronized (lockFor(photo, this)) {
+            if (photos.remove(photo)) {
+                photo.unlinkTag(this);
+            }
         }
     }
 
+    /**
+     * Adds this tag to many photos. Every photo is tagged on its own, so other threads can tag
+     * the same photos in between.
+     *
+     * @param photosToTag the photos to tag
+     * @return the number of photos which did not have the tag before
+     */
+    public int addTagToPhotos(Collection<Photo> photosToTag) {
+        int added = 0;
+        for (Photo photo : photosToTag) {
+            synchronized (lockFor(photo, this)) {
+                if (photos.add(photo)) {
+                    photo.linkTag(this);
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes this tag from many photos
+     *
+     * @param photosToUntag the photos to untag
+     * @return the number of photos which had the tag
+     */
+    public int removeTagFromPhotos(Collection<Photo> photosToUntag) {
+        int removed = 0;
+        for (Photo photo : photosToUntag) {
+            synchronized (lockFor(photo, this)) {
+                if (photos.remove(photo)) {
+                    photo.unlinkTag(this);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Adds a photo to the photos of this tag, the caller holds the lock of the pair and has
+     * already added the tag to the photo
+     */
+    void linkPhoto(Photo photo) {
+        photos.add(photo);
+    }
+
+    /**
+     * Removes a photo from the photos of this tag, the caller holds the lock of the pair and has
+     * already removed the tag from the photo
+     */
+    void unlinkPhoto(Photo photo) {
+        photos.remove(photo);
+    }
+
+    /**
+     * Gets the lock which guards the association of a photo and a tag. Tags with the same name
+     * share their locks, as they are equal.
+     *
+     * @param photo the photo
+     * @param tag the tag
+     * @return the lock of the pair
+     */
+    static Object lockFor(Photo photo, Tag tag) {
+        int hash = Long.hashCode(photo.getId()) * 31 + tag.hashCode();
+        hash ^= hash >>> 16;
+        return LOCKS[hash & (LOCK_STRIPES - 1)];
+    }
+
     /**
      * Overriding equals such that tags with the same name will be considered the same
      *
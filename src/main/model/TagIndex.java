@@ -0,0 +1,326 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An inverted index from tags to the photos that have them. Every indexed photo is given a small
+ * dense number and every tag keeps the numbers of its photos in a bitset, so combining tags with
+ * and, or and not is done a machine word (64 photos) at a time.
+ *
+ * Tag names are compared ignoring case, so tagging a photo "dog" when another photo is tagged
+ * "Dog" gives both photos the same tag.
+ */
+public class TagIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Photo, Integer> numbers = new HashMap<>();
+    private final List<Photo> photos = new ArrayList<>();
+    private final BitSet freeNumbers = new BitSet();
+    private final BitSet allPhotos = new BitSet();
+    private final TreeMap<String, Tag> tags = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<Tag, BitSet> postings = new HashMap<>();
+
+    /**
+     * Adds a photo and the tags it already has to the index
+     *
+     * @param photo the photo to add
+     */
+    public void addPhoto(Photo photo) {
+        lock.writeLock().lock();
+        try {
+            if (numbers.containsKey(photo)) {
+                return;
+            }
+            int number = freeNumbers.isEmpty() ? photos.size() : freeNumbers.nextSetBit(0);
+            if (number == photos.size()) {
+                photos.add(photo);
+            } else {
+                photos.set(number, photo);
+                freeNumbers.clear(number);
+            }
+            numbers.put(photo, number);
+            allPhotos.set(number);
+            for (Tag tag : new ArrayList<>(photo.getTags())) {
+                Tag canonical = canonicalTag(tag.getName(), tag);
+                if (canonical != tag) {
+                    photo.removeTag(tag);
+                    photo.addTag(canonical);
+                }
+                postings.get(canonical).set(number);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a photo from the index, the photo keeps its tags
+     *
+     * @param photo the photo to remove
+     */
+    public void removePhoto(Photo photo) {
+        lock.writeLock().lock();
+        try {
+            Integer number = numbers.remove(photo);
+            if (number == null) {
+                return;
+            }
+            for (Tag tag : photo.getTags()) {
+                BitSet posting = postings.get(tags.get(tag.getName()));
+                if (posting != null) {
+                    posting.clear(number);
+                }
+            }
+            photos.set(number, null);
+            freeNumbers.set(number);
+            allPhotos.clear(number);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tags a photo, the photo is added to the index if it is not indexed yet
+     *
+     * @param photo the photo to tag
+     * @param tagName the name of the tag
+     * @return the tag the photo was given
+     */
+    public Tag tag(Photo photo, String tagName) {
+        lock.writeLock().lock();
+        try {
+            addPhoto(photo);
+            Tag tag = canonicalTag(tagName, null);
+            photo.addTag(tag);
+            postings.get(tag).set(numbers.get(photo));
+            return tag;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a tag from a photo
+     *
+     * @param photo the photo to untag
+     * @param tagName the name of the tag
+     */
+    public void untag(Photo photo, String tagName) {
+        lock.writeLock().lock();
+        try {
+            Tag tag = tags.get(tagName);
+            Integer number = numbers.get(photo);
+            if (tag == null || number == null) {
+                return;
+            }
+            photo.removeTag(tag);
+            postings.get(tag).clear(number);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tags many photos at once, photos which are not indexed yet are added to the index
+     *
+     * @param photosToTag the photos to tag
+     * @param tagName the name of the tag
+     * @return the tag the photos were given
+     */
+    public Tag tagAll(Collection<Photo> photosToTag, String tagName) {
+        lock.writeLock().lock();
+        try {
+            Tag tag = canonicalTag(tagName, null);
+            BitSet posting = postings.get(tag);
+            for (Photo photo : photosToTag) {
+                addPhoto(photo);
+                posting.set(numbers.get(photo));
+            }
+            tag.addTagToPhotos(photosToTag);
+            return tag;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a tag from many photos at once
+     *
+     * @param photosToUntag the photos to untag
+     * @param tagName the name of the tag
+     */
+    public void untagAll(Collection<Photo> photosToUntag, String tagName) {
+        lock.writeLock().lock();
+        try {
+            Tag tag = tags.get(tagName);
+            if (tag == null) {
+                return;
+            }
+            BitSet posting = postings.get(tag);
+            List<Photo> indexed = new ArrayList<>(photosToUntag.size());
+            for (Photo photo : photosToUntag) {
+                Integer number = numbers.get(photo);
+                if (number != null) {
+                    posting.clear(number);
+                    indexed.add(photo);
+                }
+            }
+            tag.removeTagFromPhotos(indexed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the photos with a tag
+     *
+     * @param tagName the name of the tag
+     * @return the number of indexed photos with the tag
+     */
+    public int count(String tagName) {
+        lock.readLock().lock();
+        try {
+            Tag tag = tags.get(tagName);
+            return tag == null ? 0 : postings.get(tag).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the tags whose names start with a prefix, ignoring case
+     *
+     * @param prefix the start of the tag names
+     * @return the names of the matching tags, in alphabetical order, with the number of photos
+     *         which have each tag
+     */
+    public SortedMap<String, Integer> tagsWithPrefix(String prefix) {
+        lock.readLock().lock();
+        try {
+            SortedMap<String, Integer> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Tag tag : tagsStartingWith(prefix)) {
+                counts.put(tag.getName(), postings.get(tag).cardinality());
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the photos which have all of the tags in allOf, at least one of the tags in anyOf
+     * (unless anyOf is empty) and none of the tags in noneOf
+     *
+     * @param allOf the tags the photos must all have
+     * @param anyOf the tags the photos must have at least one of, ignored if empty
+     * @param noneOf the tags the photos must not have
+     * @return the matching photos
+     */
+    public List<Photo> query(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        lock.readLock().lock();
+        try {
+            BitSet result = (BitSet) allPhotos.clone();
+            for (String tagName : allOf) {
+                result.and(posting(tagName));
+            }
+            if (!anyOf.isEmpty()) {
+                BitSet any = new BitSet();
+                for (String tagName : anyOf) {
+                    any.or(posting(tagName));
+                }
+                result.and(any);
+            }
+            for (String tagName : noneOf) {
+                result.andNot(posting(tagName));
+            }
+            return toPhotos(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the photos matching a filter typed by the user. The filter is a list of words separated
+     * by spaces. A photo matches a word if it has a tag starting with the word, and a word starting
+     * with a minus excludes the photos which match the rest of the word. A photo matches the filter
+     * if it matches every word.
+     *
+     * @param filter the filter, for example "dog out -cat"
+     * @return the matching photos
+     */
+    public List<Photo> filter(String filter) {
+        lock.readLock().lock();
+        try {
+            BitSet result = (BitSet) allPhotos.clone();
+            for (String word : filter.trim().split("\\s+")) {
+                boolean exclude = word.startsWith("-");
+                String prefix = exclude ? word.substring(1) : word;
+                if (prefix.isEmpty()) {
+                    continue;
+                }
+                BitSet matches = new BitSet();
+                for (Tag tag : tagsStartingWith(prefix)) {
+                    matches.or(postings.get(tag));
+                }
+                if (exclude) {
+                    result.andNot(matches);
+                } else {
+                    result.and(matches);
+                }
+            }
+            return toPhotos(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Helper method which returns the tag with the given name, creating it if there is none
+     *
+     * @param tagName the name of the tag
+     * @param candidate the tag object to use if there is no tag with the name yet, or null to create one
+     */
+    private Tag canonicalTag(String tagName, Tag candidate) {
+        Tag tag = tags.get(tagName);
+        if (tag == null) {
+            tag = candidate != null ? candidate : new Tag(tagName);
+            tags.put(tagName, tag);
+            postings.put(tag, new BitSet());
+        }
+        return tag;
+    }
+
+    /**
+     * Helper method which returns the posting list of a tag, or an empty one if there is no such tag
+     */
+    private BitSet posting(String tagName) {
+        Tag tag = tags.get(tagName);
+        return tag == null ? new BitSet() : postings.get(tag);
+    }
+
+    /**
+     * Helper method which finds the tags starting with a prefix, ignoring case
+     */
+    private Collection<Tag> tagsStartingWith(String prefix) {
+        return tags.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+    }
+
+    /**
+     * Helper method which turns a set of photo numbers into the photos
+     */
+    private List<Photo> toPhotos(BitSet numbersSet) {
+        List<Photo> result = new ArrayList<>(numbersSet.cardinality());
+        for (int number = numbersSet.nextSetBit(0); number >= 0; number = numbersSet.nextSetBit(number + 1)) {
+            result.add(photos.get(number));
+        }
+        return result;
+    }
+}
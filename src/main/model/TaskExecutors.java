@@ -0,0 +1,126 @@
+package model;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors background work runs on. Blocking file operations (copying, deleting,
+ * walking folders) run on I/O executors, which start a virtual thread for every task when the Java
+ * runtime has them (Java 21 and later) and otherwise a cached platform thread, so many slow reads
+ * from a network drive or USB stick can wait at the same time. Decoding and scaling run on CPU
+ * executors with a fixed number of platform threads and a bounded queue. Handing work to a full CPU
+ * executor waits until there is room, which slows down the I/O work feeding it instead of piling
+ * up decoded images or starting more decodes than there are cores.
+ */
+public final class TaskExecutors {
+    public static final int CPU_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = threadPerTaskExecutorMethod();
+
+    private TaskExecutors() {
+    }
+
+    /**
+     * Creates an executor for blocking I/O which runs every task on a thread of its own
+     *
+     * @param name the name of the threads
+     * @return a virtual thread per task executor if the runtime supports it, otherwise a cached
+     *         pool of daemon threads
+     */
+    public static ExecutorService newIoExecutor(String name) {
+        if (usesVirtualThreads()) {
+            ThreadFactory named = runnable -> {
+                Thread thread = VIRTUAL_THREADS.newThread(runnable);
+                thread.setName(name);
+                return thread;
+            };
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, named);
+            } catch (ReflectiveOperationException e) {
+                // fall back to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(daemonThreads(name));
+    }
+
+    /**
+     * Creates an executor for decoding and other CPU heavy work. Executing a task while the
+     * queue is full waits until there is room.
+     *
+     * @param name the name of the threads
+     * @param threads the number of threads, usually CPU_THREADS
+     * @param queueCapacity the number of tasks which can wait for a thread
+     * @return the executor
+     */
+    public static ThreadPoolExecutor newCpuExecutor(String name, int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads(name), (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Executor was shut down");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for room", e);
+                    }
+                });
+    }
+
+    /**
+     * Creates a factory for named daemon platform threads
+     *
+     * @param name the name of the threads
+     * @return the thread factory
+     */
+    public static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return true if I/O executors use virtual threads
+     */
+    public static boolean usesVirtualThreads() {
+        return VIRTUAL_THREADS != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Helper method which gets the factory for virtual threads through reflection, as the
+     * application is still built for Java versions which do not have them
+     *
+     * @return the factory or null if the runtime has no virtual threads
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method which gets Executors.newThreadPerTaskExecutor through reflection
+     *
+     * @return the method or null if the runtime does not have it
+     */
+    private static Method threadPerTaskExecutorMethod() {
+        try {
+            return Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
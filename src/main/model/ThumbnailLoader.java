@@ -0,0 +1,118 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Loads thumbnails on demand in the background, for example for the photos which are on screen.
+ * Every request replaces the previous one: photos which are no longer wanted are dropped from the
+ * queue before they are loaded, and the wanted photos are loaded in the order they were requested.
+ * Thumbnails which are missing are created from the photo.
+ */
+public class ThumbnailLoader {
+    private final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<>();
+    private final ExecutorService workers;
+    private final Listener listener;
+    private final LongSupplier pendingGauge = this::getPendingCount;
+
+    /**
+     * Listener which is told about loaded thumbnails, from the worker threads
+     */
+    public interface Listener {
+        /**
+         * Called when the thumbnail of a photo was loaded or created
+         *
+         * @param photo the photo whose thumbnail is now available
+         */
+        void thumbnailLoaded(Photo photo);
+    }
+
+    /**
+     * Constructor for a thumbnail loader, which starts its worker threads
+     *
+     * @param threads the number of worker threads
+     * @param listener the listener to tell about loaded thumbnails
+     */
+    public ThumbnailLoader(int threads, Listener listener) {
+        this.listener = listener;
+        this.workers = Executors.newFixedThreadPool(threads, TaskExecutors.daemonThreads("thumbnail-on-demand"));
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+        Metrics.gauge("thumbnails.pending", pendingGauge);
+    }
+
+    /**
+     * Replaces the photos whose thumbnails should be loaded. Photos whose thumbnails are already
+     * loaded are skipped, requests for photos which are not in the list any more are cancelled.
+     *
+     * @param wanted the photos whose thumbnails should be loaded, most important first
+     */
+    public synchronized void request(List<Photo> wanted) {
+        queue.clear();
+        for (int i = 0; i < wanted.size(); i++) {
+            Photo photo = wanted.get(i);
+            if (photo.getThumbnail() == null) {
+                queue.add(new Request(photo, i));
+            }
+        }
+    }
+
+    /**
+     * @return the number of thumbnails waiting to be loaded
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the worker threads, pending thumbnails are not loaded
+     *
+     * @throws InterruptedException if interrupted while waiting for the workers to stop
+     */
+    public void shutdown() throws InterruptedException {
+        Metrics.removeGauge("thumbnails.pending", pendingGauge);
+        queue.clear();
+        workers.shutdownNow();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Helper method run by every worker, loads thumbnails until the loader is shut down
+     */
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Photo photo = queue.take().photo;
+                // the same photo can be requested again while it is being loaded
+                if (photo.getThumbnail() == null && (photo.loadThumbnail() || photo.createThumbnail())) {
+                    listener.thumbnailLoaded(photo);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper class for a queued thumbnail, requests which were made earlier in the list come first
+     */
+    private static class Request implements Comparable<Request> {
+        private final Photo photo;
+        private final int priority;
+
+        Request(Photo photo, int priority) {
+            this.photo = photo;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            return Integer.compare(priority, other.priority);
+        }
+    }
+}
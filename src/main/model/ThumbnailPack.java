@@ -0,0 +1,340 @@
+package model;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single file holding the thumbnails of all photos, as an alternative to one small file per
+ * thumbnail in the thumbnails folder. The file is memory mapped, so starting up opens one file
+ * instead of one per photo.
+ *
+ * The file is a header followed by records of: a status byte, the length and UTF-8 bytes of the
+ * photo name, and the length and bytes of the jpeg thumbnail. New thumbnails are appended to the
+ * end. Deleting a thumbnail only flips the status byte of its record to a tombstone, the space is
+ * reclaimed when the pack is compacted.
+ */
+public class ThumbnailPack implements Closeable {
+    private static final int MAGIC = 0x49525450; // "IRTP"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final byte STATUS_LIVE = 1;
+    private static final byte STATUS_DELETED = 0;
+    private static final long COMPACT_MIN_DEAD_BYTES = 1024 * 1024;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long liveBytes;
+    private long deadBytes;
+
+    /**
+     * Opens a thumbnail pack, creating it if it does not exist. Packs which consist mostly of
+     * deleted thumbnails are compacted when they are opened.
+     *
+     * @param file the pack file
+     * @throws IOException if the pack could not be opened
+     */
+    public ThumbnailPack(Path file) throws IOException {
+        this.file = file;
+        open();
+        if (deadBytes > COMPACT_MIN_DEAD_BYTES && deadBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Checks whether the pack holds a thumbnail
+     *
+     * @param name the name of the photo
+     * @return true if the pack holds a thumbnail for the photo
+     */
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * @return the number of thumbnails in the pack
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads the jpeg bytes of a thumbnail
+     *
+     * @param name the name of the photo
+     * @return the jpeg bytes of the thumbnail or null if the pack does not hold one for the photo
+     * @throws IOException if the pack could not be read
+     */
+    public byte[] readBytes(String name) throws IOException {
+        Entry entry;
+        ByteBuffer buffer;
+        byte[] bytes;
+        synchronized (this) {
+            entry = entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+            bytes = new byte[entry.dataLength];
+            if (entry.dataOffset + entry.dataLength > mapped.capacity()) {
+                // the thumbnail was appended after the file was mapped, mapping the whole file
+                // again for every new thumbnail would leave a mapping behind per read until GC
+                readFully(ByteBuffer.wrap(bytes), entry.dataOffset);
+                return bytes;
+            }
+            buffer = mapped;
+        }
+        copyBytes(buffer, (int) entry.dataOffset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads and decodes a thumbnail
+     *
+     * @param name the name of the photo
+     * @return the thumbnail or null if the pack does not hold one for the photo
+     * @throws IOException if the pack could not be read
+     */
+    public BufferedImage read(String name) throws IOException {
+        byte[] bytes = readBytes(name);
+        return bytes == null ? null : ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Checks whether a thumbnail still fits into the pack. The pack is mapped as a whole, so it
+     * cannot grow beyond the largest buffer which can be mapped.
+     *
+     * @param name the name of the photo
+     * @param length the number of bytes of the jpeg thumbnail
+     * @return true if put can append the thumbnail
+     * @throws IOException if the size of the pack could not be read
+     */
+    public synchronized boolean hasRoomFor(String name, int length) throws IOException {
+        return channel.size() + recordLength(name, length) <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Appends a thumbnail to the pack, replacing the thumbnail the photo had before
+     *
+     * @param name the name of the photo
+     * @param jpeg the jpeg bytes of the thumbnail
+     * @throws IOException if the pack could not be written or has no room for the thumbnail
+     */
+    public synchronized void put(String name, byte[] jpeg) throws IOException {
+        if (!hasRoomFor(name, jpeg.length)) {
+            throw new IOException("Thumbnail pack is full: " + file);
+        }
+        remove(name);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + nameBytes.length + 4 + jpeg.length);
+        record.put(STATUS_LIVE).putInt(nameBytes.length).put(nameBytes).putInt(jpeg.length).put(jpeg);
+        record.flip();
+        long offset = channel.size();
+        writeFully(record, offset);
+        entries.put(name, new Entry(offset, offset + record.capacity() - jpeg.length, jpeg.length));
+        liveBytes += record.capacity();
+    }
+
+    /**
+     * Deletes a thumbnail from the pack by turning its record into a tombstone
+     *
+     * @param name the name of the photo
+     * @return true if the pack held a thumbnail for the photo
+     * @throws IOException if the pack could not be written
+     */
+    public synchronized boolean remove(String name) throws IOException {
+        Entry entry = entries.remove(name);
+        if (entry == null) {
+            return false;
+        }
+        writeFully(ByteBuffer.wrap(new byte[] {STATUS_DELETED}), entry.recordOffset);
+        long recordLength = entry.dataOffset + entry.dataLength - entry.recordOffset;
+        liveBytes -= recordLength;
+        deadBytes += recordLength;
+        return true;
+    }
+
+    /**
+     * Rewrites the pack with only the thumbnails which were not deleted. On platforms which do not
+     * allow replacing a memory mapped file the old pack is kept.
+     *
+     * @throws IOException if the pack could not be written
+     */
+    public synchronized void compact() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            output.write(header());
+            for (Entry entry : entries.values()) {
+                long recordLength = entry.dataOffset + entry.dataLength - entry.recordOffset;
+                channel.transferTo(entry.recordOffset, recordLength, output);
+            }
+        }
+        channel.close();
+        mapped = null;
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+        }
+        open();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+        mapped = null;
+    }
+
+    /**
+     * Helper method which opens the pack file and indexes its records
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_LENGTH) {
+            channel.truncate(0);
+            writeFully(header(), 0);
+        }
+        remap();
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a thumbnail pack: " + file);
+        }
+        entries.clear();
+        liveBytes = 0;
+        deadBytes = 0;
+        long validLength = scan();
+        if (validLength < channel.size()) {
+            // a record which was cut off part way through
+            channel.truncate(validLength);
+        }
+    }
+
+    /**
+     * Helper method which walks the records of the pack
+     *
+     * @return the length of the pack up to the end of the last complete record
+     */
+    private long scan() {
+        int position = HEADER_LENGTH;
+        int limit = mapped.capacity();
+        while (position + 5 <= limit) {
+            byte status = mapped.get(position);
+            int nameLength = mapped.getInt(position + 1);
+            if (nameLength < 0 || position + 5L + nameLength + 4 > limit) {
+                break;
+            }
+            byte[] nameBytes = new byte[nameLength];
+            copyBytes(mapped, position + 5, nameBytes);
+            int dataOffset = position + 5 + nameLength + 4;
+            int dataLength = mapped.getInt(dataOffset - 4);
+            if (dataLength < 0 || (long) dataOffset + dataLength > limit) {
+                break;
+            }
+            int recordLength = dataOffset + dataLength - position;
+            if (status == STATUS_LIVE) {
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                Entry replaced = entries.put(name, new Entry(position, dataOffset, dataLength));
+                liveBytes += recordLength;
+                if (replaced != null) {
+                    long replacedLength = replaced.dataOffset + replaced.dataLength - replaced.recordOffset;
+                    liveBytes -= replacedLength;
+                    deadBytes += replacedLength;
+                }
+            } else {
+                deadBytes += recordLength;
+            }
+            position = dataOffset + dataLength;
+        }
+        return position;
+    }
+
+    /**
+     * Helper method which maps the whole pack file
+     */
+    private void remap() throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Thumbnail pack too large to map: " + file);
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    /**
+     * Helper method which calculates the length of the record of a thumbnail
+     */
+    private static long recordLength(String name, int length) {
+        return 1 + 4 + name.getBytes(StandardCharsets.UTF_8).length + 4L + length;
+    }
+
+    /**
+     * Helper method which fills a whole buffer from the given position of the pack file
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Thumbnail pack ends inside a record: " + file);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Helper method which writes a whole buffer at the given position of the pack file
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Helper method which copies bytes from a position of a buffer without moving the buffer's own
+     * position, so readers can share the mapped buffer
+     */
+    private static void copyBytes(ByteBuffer buffer, int position, byte[] bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+    }
+
+    /**
+     * Helper method which creates the header of a pack file
+     */
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Helper class for the location of a thumbnail record in the pack file
+     */
+    private static class Entry {
+        private final long recordOffset;
+        private final long dataOffset;
+        private final int dataLength;
+
+        Entry(long recordOffset, long dataOffset, int dataLength) {
+            this.recordOffset = recordOffset;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+        }
+    }
+}
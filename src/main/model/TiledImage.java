@@ -0,0 +1,397 @@
+package model;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * An image which is decoded in square tiles, so a viewer can zoom into and pan around an image
+ * far larger than the screen while only the part which is shown is ever decoded. Level 0 has every
+ * pixel of the image, every higher level only every second pixel of the level below (source
+ * subsampling), up to the level at which the whole image fits into a single tile. Whatever the
+ * level, a tile is at most TILE_SIZE pixels square, so the memory needed depends on the size of
+ * the screen and not on the size of the image.
+ *
+ * Decoded tiles are kept in a cache of their own. Tiles are decoded in the background by worker
+ * threads, and like with the ThumbnailLoader every request replaces the previous one, so tiles
+ * which were panned past are dropped from the queue before they are decoded. A jpeg file can only
+ * be read from the top, so reading a region costs about as much as reading every row above it:
+ * tiles which are queued next to each other in the same row are therefore read together as one
+ * strip and split up afterwards.
+ */
+public class TiledImage {
+    public static final int TILE_SIZE = 256;
+    private final File file;
+    private final int width;
+    private final int height;
+    private final int maxLevel;
+    private final ImageCache tiles;
+    private final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<>();
+    // tiles a worker is decoding, so requesting them again does not decode them twice
+    private final Set<Tile> decoding = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers;
+    private final Listener listener;
+
+    /**
+     * Listener which is told about decoded tiles, from the worker threads
+     */
+    public interface Listener {
+        /**
+         * Called when a tile was decoded and can be taken from the cache
+         *
+         * @param tile the tile which is now available
+         */
+        void tileLoaded(Tile tile);
+    }
+
+    /**
+     * Constructor for a tiled image, which reads the size of the image and starts the worker threads
+     *
+     * @param file the image file
+     * @param threads the number of worker threads
+     * @param cacheBytes the number of bytes the decoded tiles can take up
+     * @param listener the listener to tell about decoded tiles
+     * @throws IOException if the file is not a readable image
+     */
+    public TiledImage(File file, int threads, long cacheBytes, Listener listener) throws IOException {
+        Dimension size = ImageDecoder.readSize(file);
+        this.file = file;
+        this.width = size.width;
+        this.height = size.height;
+        int level = 0;
+        while ((width - 1 >> level) >= TILE_SIZE || (height - 1 >> level) >= TILE_SIZE) {
+            level++;
+        }
+        this.maxLevel = level;
+        this.tiles = new ImageCache(cacheBytes);
+        this.listener = listener;
+        this.workers = Executors.newFixedThreadPool(threads, TaskExecutors.daemonThreads("tile-decoder"));
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * @return the width of the image at full resolution
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image at full resolution
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the coarsest level, at which the whole image is a single tile
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Finds the coarsest level which still has at least one pixel for every pixel on screen
+     *
+     * @param scale the number of screen pixels per image pixel
+     * @return the level to show the image at
+     */
+    public int levelFor(double scale) {
+        int level = 0;
+        while (level < maxLevel && scale * (2 << level) <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Lists the tiles of a level which cover a region of the image, row by row
+     *
+     * @param level the level of the tiles
+     * @param region the region in full resolution pixel coordinates
+     * @return the tiles covering the part of the region which is within the image
+     */
+    public List<Tile> tilesIn(int level, Rectangle region) {
+        List<Tile> covering = new ArrayList<>();
+        Rectangle clipped = region.intersection(new Rectangle(width, height));
+        if (clipped.isEmpty()) {
+            return covering;
+        }
+        int span = TILE_SIZE << level;
+        for (int row = clipped.y / span; row <= (clipped.y + clipped.height - 1) / span; row++) {
+            for (int column = clipped.x / span; column <= (clipped.x + clipped.width - 1) / span; column++) {
+                covering.add(new Tile(level, column, row));
+            }
+        }
+        return covering;
+    }
+
+    /**
+     * Lists the tiles a viewer showing a region of the image needs, most important first: the
+     * single tile of the coarsest level, which can stand in for any tile which is not decoded yet,
+     * then the tiles on screen from the centre outwards, then a ring of tiles around the screen
+     * which are prefetched so panning does not show gaps.
+     *
+     * @param level the level the region is shown at
+     * @param region the region on screen in full resolution pixel coordinates
+     * @return the tiles to request
+     */
+    public List<Tile> wantedTiles(int level, Rectangle region) {
+        List<Tile> wanted = new ArrayList<>();
+        wanted.add(new Tile(maxLevel, 0, 0));
+        int span = TILE_SIZE << level;
+        double centreX = region.getCenterX();
+        double centreY = region.getCenterY();
+        Comparator<Tile> fromCentre = Comparator.comparingDouble(
+                tile -> Math.hypot((tile.column + 0.5) * span - centreX, (tile.row + 0.5) * span - centreY));
+
+        List<Tile> visible = tilesIn(level, region);
+        visible.sort(fromCentre);
+        List<Tile> ring = tilesIn(level, new Rectangle(region.x - span, region.y - span,
+                region.width + 2 * span, region.height + 2 * span));
+        ring.removeAll(visible);
+        ring.sort(fromCentre);
+        for (Tile tile : visible) {
+            if (!wanted.contains(tile)) {
+                wanted.add(tile);
+            }
+        }
+        wanted.addAll(ring);
+        return wanted;
+    }
+
+    /**
+     * Gets the region of the image a tile shows
+     *
+     * @param tile the tile
+     * @return the region in full resolution pixel coordinates, cut off at the edges of the image
+     */
+    public Rectangle regionOf(Tile tile) {
+        int span = TILE_SIZE << tile.level;
+        return new Rectangle(tile.column * span, tile.row * span, span, span)
+                .intersection(new Rectangle(width, height));
+    }
+
+    /**
+     * Gets a decoded tile from the cache
+     *
+     * @param tile the tile
+     * @return the decoded tile, or null if it was not decoded yet or was evicted
+     */
+    public BufferedImage getTile(Tile tile) {
+        return tiles.get(keyOf(tile));
+    }
+
+    /**
+     * Replaces the tiles which should be decoded. Tiles which are decoded or being decoded are skipped,
+     * requests for tiles which are not in the list any more are cancelled.
+     *
+     * @param wanted the tiles to decode, most important first
+     */
+    public synchronized void request(List<Tile> wanted) {
+        queue.clear();
+        for (int i = 0; i < wanted.size(); i++) {
+            Tile tile = wanted.get(i);
+            if (!decoding.contains(tile) && getTile(tile) == null) {
+                queue.add(new Request(tile, i));
+            }
+        }
+    }
+
+    /**
+     * @return the number of tiles waiting to be decoded
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the worker threads and drops the decoded tiles. Workers which are decoding finish
+     * their current strip first, but the caller does not wait for them.
+     */
+    public void close() {
+        queue.clear();
+        workers.shutdownNow();
+        tiles.clear();
+    }
+
+    /**
+     * Helper method run by every worker, decodes tiles until the image is closed
+     */
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Tile> strip = takeStrip(queue.take().tile);
+                boolean decoded = false;
+                try {
+                    if (!strip.isEmpty()) {
+                        decodeStrip(strip);
+                        decoded = true;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // the tiles stay missing, the viewer keeps showing the coarser ones
+                } finally {
+                    decoding.removeAll(strip);
+                }
+                if (decoded) {
+                    for (Tile tile : strip) {
+                        listener.tileLoaded(tile);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper method which takes the queued tiles in the same row as a tile off the queue, so they
+     * are decoded together, and marks them as being decoded. Tiles which were decoded or taken by
+     * another worker since they were requested are left out.
+     *
+     * @return the tiles to decode, ordered by column
+     */
+    private List<Tile> takeStrip(Tile first) {
+        List<Tile> strip = new ArrayList<>();
+        strip.add(first);
+        synchronized (this) {
+            for (Iterator<Request> iterator = queue.iterator(); iterator.hasNext(); ) {
+                Tile tile = iterator.next().tile;
+                if (tile.level == first.level && tile.row == first.row) {
+                    strip.add(tile);
+                    iterator.remove();
+                }
+            }
+        }
+        strip.removeIf(tile -> getTile(tile) != null || !decoding.add(tile));
+        strip.sort(Comparator.comparingInt(tile -> tile.column));
+        return strip;
+    }
+
+    /**
+     * Helper method which decodes the region from the first to the last tile of a strip at once and
+     * caches every tile in it, including the ones in between which were not requested
+     */
+    private void decodeStrip(List<Tile> strip) throws IOException {
+        Tile first = strip.get(0);
+        Tile last = strip.get(strip.size() - 1);
+        int subsampling = 1 << first.level;
+        Rectangle region = regionOf(first).union(regionOf(last));
+        Metrics.Sample sample = Metrics.DECODE_TILE.start(file.getName());
+        BufferedImage decoded;
+        try {
+            decoded = ImageDecoder.decodeRegion(file, region, subsampling);
+            sample.stop();
+        } catch (IOException e) {
+            sample.fail(e);
+            throw e;
+        }
+        for (int column = first.column; column <= last.column; column++) {
+            Tile tile = new Tile(first.level, column, first.row);
+            Rectangle tileRegion = regionOf(tile);
+            int x = (tileRegion.x - region.x) / subsampling;
+            int tileWidth = Math.min(decoded.getWidth() - x, (tileRegion.width + subsampling - 1) / subsampling);
+            // a copy, so the cache does not hold on to the whole strip through a shared raster
+            BufferedImage image = new BufferedImage(tileWidth, decoded.getHeight(),
+                    decoded.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : decoded.getType());
+            Graphics2D graphics = image.createGraphics();
+            graphics.drawImage(decoded, -x, 0, null);
+            graphics.dispose();
+            tiles.put(keyOf(tile), image);
+        }
+    }
+
+    /**
+     * Helper method which builds the cache key of a tile
+     */
+    private String keyOf(Tile tile) {
+        return tile.level + "/" + tile.column + "/" + tile.row;
+    }
+
+    /**
+     * A tile of a tiled image, identified by its level and its column and row within the level
+     */
+    public static final class Tile {
+        private final int level;
+        private final int column;
+        private final int row;
+
+        /**
+         * Constructor for a tile
+         *
+         * @param level the level of the tile, 0 for full resolution
+         * @param column the column of the tile, counted from the left
+         * @param row the row of the tile, counted from the top
+         */
+        public Tile(int level, int column, int row) {
+            this.level = level;
+            this.column = column;
+            this.row = row;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Tile)) {
+                return false;
+            }
+            Tile tile = (Tile) o;
+            return level == tile.level && column == tile.column && row == tile.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(level, column, row);
+        }
+
+        @Override
+        public String toString() {
+            return level + "/" + column + "/" + row;
+        }
+    }
+
+    /**
+     * Helper class for a queued tile, requests which were made earlier in the list come first
+     */
+    private static class Request implements Comparable<Request> {
+        private final Tile tile;
+        private final int priority;
+
+        Request(Tile tile, int priority) {
+            this.tile = tile;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            return Integer.compare(priority, other.priority);
+        }
+    }
+}
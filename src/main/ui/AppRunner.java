@@ -1,13 +1,26 @@
 package ui;
 
+import model.Metrics;
+
+import javax.swing.*;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Main class in which the simple image repository can be launched
  */
 public class AppRunner {
     /**
-     * Runs the application
+     * Runs the application. The GUI is created on the event dispatch thread so that thumbnails
+     * loaded in the background are only added to the interface after it has been built. When the
+     * imagerepo.metricsFile system property is set, the metrics are appended to that file as CSV
+     * every imagerepo.metricsPeriodSeconds seconds (60 by default).
      */
     public static void main(String[] args) {
-        ImageRepoGUI app = new ImageRepoGUI();
+        String metricsFile = System.getProperty("imagerepo.metricsFile");
+        if (metricsFile != null) {
+            Metrics.startDump(Paths.get(metricsFile), Long.getLong("imagerepo.metricsPeriodSeconds", 60), TimeUnit.SECONDS);
+        }
+        SwingUtilities.invokeLater(ImageRepoGUI::new);
     }
 }
@@ -1,19 +1,35 @@
 package ui;
 
+import model.FolderPhotoStorage;
+import model.ImportPipeline;
 import model.Photo;
+import model.PhotoRepository;
+import model.PhotoServer;
+import model.SortedPhotoIndex;
+import model.Tag;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * The GUI class for the application
@@ -22,27 +38,56 @@ public class ImageRepoGUI {
     private final JFrame frame;
     private final JPanel panel;
     private JLabel errorLabel;
+    private JProgressBar importProgressBar;
     private JScrollPane scrollPane;
-    private JList menuList;
+    private JList<Photo> menuList;
     private JFileChooser openFileChooser;
+    private JTextField tagFilterField;
+    private JTextField searchField;
+    private JComboBox<SortChoice> sortBox;
+    // the photos shown by the Similar button, null while the list shows the filtered photos
+    private DefaultListModel<Photo> similarResults;
 
-    private List<Photo> photoList = new ArrayList<>();
+    // the list model is the only copy of the photo list in the interface, the JList only shows what it holds
+    private final DefaultListModel<Photo> photoList = new DefaultListModel<>();
+    private final PhotoRepository repository;
+    // serves the photos over HTTP if the application was started with -Dimagerepo.httpPort
+    private PhotoServer server;
+
+    private static final int THUMBNAIL_SIZE = 64;
+    // photos whose perceptual hashes differ in at most this many of the 64 bits count as similar
+    private static final int SIMILAR_MAX_DISTANCE = 10;
+    private static final int CELL_WIDTH = 100;
+    private static final int CELL_HEIGHT = THUMBNAIL_SIZE + 30;
+    private static final Color PLACEHOLDER_COLOR = new Color(230, 230, 230);
+    private static final int RELOAD_PAGE_SIZE = 1000;
+    private boolean thumbnailRequestScheduled;
 
     private final Font headingFont = new Font("SansSerif", Font.BOLD, 24);
     private final Font textFont = new Font("SansSerif", Font.BOLD, 18);
-    private final String imagePaths = System.getProperty("user.dir") + System.getProperty("file.separator") + "photos";
-    private final String thumbnailPaths = System.getProperty("user.dir") + System.getProperty("file.separator") + "thumbnails";
 
     /**
      * Constructor of for the application. Creates the JFrame and JPanels and initializes
-     * all components
+     * all components. The photos are kept in the photos and thumbnails folders, or the thumbnail
+     * pack if the application was started with -Dimagerepo.thumbnailPack=true
      */
     public ImageRepoGUI() {
+        this(new PhotoRepository(new FolderPhotoStorage(Boolean.getBoolean("imagerepo.thumbnailPack"))));
+    }
+
+    /**
+     * Constructor for the application showing a photo repository
+     *
+     * @param repository the repository to show, it is opened by the application
+     */
+    public ImageRepoGUI(PhotoRepository repository) {
+        this.repository = repository;
+        repository.addListener(new RepositoryListener());
         initalizePhotoList();
 
         frame = new JFrame();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(560, 500);
+        frame.setSize(560, 610);
         frame.setTitle("Image Repository");
         frame.setResizable(false);
 
@@ -57,36 +102,40 @@ public class ImageRepoGUI {
     }
 
     /**
-     * Initializes the photoList by reading in all the current photos in the photos directory
+     * Initializes the photoList by opening the repository, the photos are added to the list once
+     * the repository tells about them. The thumbnails are loaded in the background. Afterwards the
+     * photos folder is watched, so photos which are copied in or deleted by other programs show up.
+     * If the imagerepo.httpPort system property is set, the photos are also served over HTTP on that
+     * port, to programs on this computer only.
      */
     public void initalizePhotoList() {
-        File folderImages = new File(imagePaths);
-        File[] imagesList = folderImages.listFiles();
-
-        File folderThumbnails = new File(thumbnailPaths);
-        File[] thumbnailsList = folderThumbnails.listFiles();
-
-        for (int i = 0; i < imagesList.length; i++) {
-            String nameImage = imagesList[i].getName().replaceFirst("[.][^.]+$", "");
-            Photo toAdd = new Photo(nameImage);
-            toAdd.loadImage();
-            photoList.add(toAdd);
-            boolean containsThumbnail = false;
-            for (int j = 0; j < thumbnailsList.length; j++) {
-                String nameThumbnail = thumbnailsList[j].getName().replaceFirst("[.][^.]+$", "");
-                if (nameThumbnail.equals(nameImage)) {
-                    containsThumbnail = true;
-                    break;
-                }
-            }
-            if (!containsThumbnail) {
-                toAdd.createThumbnail();
-            } else {
-                toAdd.loadThumbnail();
+        repository.open();
+        try {
+            repository.startWatching();
+        } catch (IOException e) {
+            // the list is still correct, it is just not updated until the next start
+        }
+        Integer httpPort = Integer.getInteger("imagerepo.httpPort");
+        if (httpPort != null) {
+            try {
+                server = new PhotoServer(repository, new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort));
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null, "The photos cannot be served on port " + httpPort + ": " + e.getMessage());
             }
         }
     }
 
+    /**
+     * Repaints the grid cells once a thumbnail has been loaded. The renderer reads the
+     * thumbnails straight from the photos and only the visible cells are painted, so this does
+     * not depend on the number of photos. Repaints requested in quick succession are merged by Swing.
+     */
+    private void updateThumbnailEntries() {
+        if (menuList != null) {
+            menuList.repaint();
+        }
+    }
+
     /**
      * Initializes the page components
      */
@@ -94,20 +143,26 @@ public class ImageRepoGUI {
         initializeFileChooser();
         initializeLabels();
         initializeButtons();
-        initializeImageScrollPane(false);
+        initializeTagFilter();
+        initializeSearchField();
+        initializeImageScrollPane();
     }
 
     /**
-     * Initializes the file chooser object to only search for jpeg files
+     * Initializes the file chooser object to only search for jpeg files. Several files and whole
+     * directories can be selected at once
      */
     public void initializeFileChooser() {
         openFileChooser = new JFileChooser();
-        openFileChooser.setFileFilter(new FileNameExtensionFilter("JPG images", "jpg"));
+        openFileChooser.setFileFilter(new FileNameExtensionFilter("JPG images", "jpg", "jpeg"));
+        openFileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        openFileChooser.setMultiSelectionEnabled(true);
 
     }
 
     /**
-     * Initializes the JLables used in the app. Basically the heading label and the error label
+     * Initializes the JLables used in the app. Basically the heading label, the error label and the
+     * progress bar of imports
      */
     public void initializeLabels() {
         JLabel heading = new JLabel("Simple Image Repository");
@@ -117,15 +172,21 @@ public class ImageRepoGUI {
         panel.add(heading);
 
         errorLabel = new JLabel("");
-        errorLabel.setBounds(10, 170, 530, 20);
+        errorLabel.setBounds(10, 210, 340, 20);
         errorLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
         errorLabel.setForeground(Color.RED);
         panel.add(errorLabel);
+
+        importProgressBar = new JProgressBar();
+        importProgressBar.setBounds(360, 212, 180, 16);
+        importProgressBar.setStringPainted(true);
+        importProgressBar.setVisible(false);
+        panel.add(importProgressBar);
     }
 
     /**
      * Initializes the following buttons: the upload button, the open image button,
-     * and the delete image button
+     * the delete image button and the edit tags button
      */
     public void initializeButtons() {
         JButton uploadImageButton = new JButton(new AbstractAction("Upload A New Image") {
@@ -133,15 +194,14 @@ public class ImageRepoGUI {
             public void actionPerformed(ActionEvent e) {
                 int returnValue = openFileChooser.showOpenDialog(frame);
                 if (returnValue == JFileChooser.APPROVE_OPTION) {
-                    try {
-                        Path source = Paths.get(openFileChooser.getSelectedFile().getAbsolutePath());
-                        Path target = Paths.get(imagePaths);
-                        Files.copy(source, target.resolve(source.getFileName()), StandardCopyOption.REPLACE_EXISTING);
-                        initializeImageScrollPane(true);
-                        errorLabel.setText("");
-                    } catch (IOException ex) {
-                        errorLabel.setText("Could not open the file");
+                    List<Path> sources = new ArrayList<>();
+                    for (File selected : openFileChooser.getSelectedFiles()) {
+                        sources.add(selected.toPath());
                     }
+                    errorLabel.setText("");
+                    importProgressBar.setValue(0);
+                    importProgressBar.setVisible(true);
+                    repository.importFiles(sources, new ImportProgressListener());
                 } else {
                     errorLabel.setText("No valid file selected");
                 }
@@ -156,13 +216,15 @@ public class ImageRepoGUI {
             @Override
             public void actionPerformed(ActionEvent e) {
                 Photo photo = getSelectedPhotoObject();
-                JFrame popup = new JFrame(photo.getName());
-                ImageIcon imageIcon = new ImageIcon(photo.getImage());
-                JLabel forImage = new JLabel(imageIcon);
-
-                popup.getContentPane().add(forImage);
-                popup.setSize(imageIcon.getIconWidth(), imageIcon.getIconHeight());
-                popup.setVisible(true);
+                if (photo == null) {
+                    errorLabel.setText("No image selected");
+                    return;
+                }
+                errorLabel.setText("");
+                // the popup never needs more pixels than the screen can show
+                Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+                repository.loadPreview(photo, screen.width, screen.height).thenAccept(
+                        preview -> SwingUtilities.invokeLater(() -> showImagePopup(photo, preview)));
             }
         });
         openImageButton.setBounds(10, 100, 530, 30);
@@ -174,20 +236,218 @@ public class ImageRepoGUI {
             @Override
             public void actionPerformed(ActionEvent e) {
                 Photo photo = getSelectedPhotoObject();
-                File photoToDelete = new File(imagePaths + System.getProperty("file.separator")
-                        + photo.getName() + ".jpg");
-                File thumbnailToDelete = new File(thumbnailPaths + System.getProperty("file.separator")
-                        + photo.getName() +".jpg");
-                if (photoToDelete.delete() && thumbnailToDelete.delete()) {
-                    photoList.remove(photo);
+                if (photo == null) {
+                    errorLabel.setText("No image selected");
+                    return;
                 }
-                initializeImageScrollPane(true);
+                errorLabel.setText("");
+                // the entry is removed from the list once the repository tells about it
+                repository.removeLater(photo).thenAccept(removed -> SwingUtilities.invokeLater(() -> {
+                    if (!removed) {
+                        errorLabel.setText("Could not delete the image");
+                    }
+                }));
             }
         });
         deleteImageButton.setBounds(10, 140, 530, 30);
         deleteImageButton.setFont(textFont);
         deleteImageButton.setFocusPainted(false);
         panel.add(deleteImageButton);
+
+        JButton editTagsButton = new JButton(new AbstractAction("Edit Tags Of Selected Image") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Photo photo = getSelectedPhotoObject();
+                if (photo == null) {
+                    errorLabel.setText("No image selected");
+                    return;
+                }
+                errorLabel.setText("");
+                editTags(photo);
+            }
+        });
+        editTagsButton.setBounds(10, 180, 530, 30);
+        editTagsButton.setFont(textFont);
+        editTagsButton.setFocusPainted(false);
+        panel.add(editTagsButton);
+    }
+
+    /**
+     * Shows a photo in a popup window the size of its preview. The preview is shown right away,
+     * zooming in decodes the parts of the photo on screen at the resolution they are shown at.
+     *
+     * @param photo the photo the preview belongs to
+     * @param preview the preview, or null if the photo could not be read
+     */
+    private void showImagePopup(Photo photo, Image preview) {
+        if (preview == null) {
+            errorLabel.setText("Could not open the image");
+            return;
+        }
+        TiledImageViewer viewer;
+        try {
+            viewer = new TiledImageViewer(photo.getImageFile().toFile(), preview);
+        } catch (IOException e) {
+            errorLabel.setText("Could not open the image");
+            return;
+        }
+        JFrame popup = new JFrame(photo.getName());
+        popup.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        popup.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                viewer.close();
+            }
+        });
+        viewer.setPreferredSize(new Dimension(preview.getWidth(null), preview.getHeight(null)));
+        popup.getContentPane().add(viewer);
+        popup.pack();
+        popup.setVisible(true);
+    }
+
+    /**
+     * Initializes the text field which filters the images by their tags as the user types
+     */
+    public void initializeTagFilter() {
+        JLabel filterLabel = new JLabel("Filter by tags:");
+        filterLabel.setBounds(10, 235, 130, 25);
+        filterLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
+        panel.add(filterLabel);
+
+        tagFilterField = new JTextField();
+        tagFilterField.setBounds(140, 235, 170, 25);
+        tagFilterField.setToolTipText("Tags to show, separated by spaces. Start a tag with - to hide it");
+        tagFilterField.getDocument().addDocumentListener(new FilterListener());
+        panel.add(tagFilterField);
+
+        sortBox = new JComboBox<>(SortChoice.values());
+        sortBox.setBounds(320, 235, 100, 25);
+        sortBox.setToolTipText("The order to show the images in");
+        sortBox.addActionListener(e -> {
+            reloadPhotoEntries();
+            filtersChanged();
+        });
+        panel.add(sortBox);
+
+        JButton similarButton = new JButton(new AbstractAction("Similar") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Photo photo = getSelectedPhotoObject();
+                if (photo == null) {
+                    errorLabel.setText("No image selected");
+                    return;
+                }
+                showSimilarPhotos(photo);
+            }
+        });
+        similarButton.setBounds(430, 235, 110, 25);
+        similarButton.setToolTipText("Show the images which look like the selected image");
+        similarButton.setFocusPainted(false);
+        panel.add(similarButton);
+    }
+
+    /**
+     * Initializes the text field which searches the names and descriptions of the images as the
+     * user types
+     */
+    public void initializeSearchField() {
+        JLabel searchLabel = new JLabel("Search:");
+        searchLabel.setBounds(10, 265, 130, 25);
+        searchLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
+        panel.add(searchLabel);
+
+        searchField = new JTextField();
+        searchField.setBounds(140, 265, 400, 25);
+        searchField.setToolTipText("Words in the names or descriptions of the images to show");
+        searchField.getDocument().addDocumentListener(new FilterListener());
+        panel.add(searchField);
+    }
+
+    /**
+     * Shows the selected photo followed by the photos which look like it in the JList. Typing
+     * into the tag filter or the search field, or choosing another order, goes back to filtering.
+     * Photos which are imported or deleted in the meantime do not end the view, deleted photos are
+     * just taken out of it.
+     *
+     * @param photo the photo to show similar photos of
+     */
+    private void showSimilarPhotos(Photo photo) {
+        List<Photo> similar = repository.similarTo(photo, SIMILAR_MAX_DISTANCE);
+        errorLabel.setText(similar.isEmpty() ? "No similar images found" : "");
+        DefaultListModel<Photo> results = new DefaultListModel<>();
+        results.addElement(photo);
+        for (Photo match : similar) {
+            results.addElement(match);
+        }
+        similarResults = results;
+        menuList.setModel(results);
+        menuList.setSelectedIndex(0);
+    }
+
+    /**
+     * Leaves the similar photos, if they are shown, and filters the list by what the user entered
+     */
+    private void filtersChanged() {
+        similarResults = null;
+        applyFilters();
+    }
+
+    /**
+     * Shows only the photos matching both the tag filter and the search in the JList, or all
+     * photos if both are empty. The search is looked up in the search index, so this does not go
+     * through all the photos. While the similar photos are shown the list is left alone.
+     */
+    private void applyFilters() {
+        if (similarResults != null) {
+            return;
+        }
+        String filter = tagFilterField.getText();
+        String search = searchField.getText();
+        if (filter.trim().isEmpty() && search.trim().isEmpty()) {
+            if (menuList.getModel() != photoList) {
+                menuList.setModel(photoList);
+            }
+            return;
+        }
+        List<Photo> matches;
+        if (search.trim().isEmpty()) {
+            matches = new ArrayList<>(repository.query(filter));
+        } else if (filter.trim().isEmpty()) {
+            matches = new ArrayList<>(repository.search(search));
+        } else {
+            Set<Photo> tagged = new HashSet<>(repository.query(filter));
+            matches = new ArrayList<>();
+            for (Photo photo : repository.search(search)) {
+                if (tagged.contains(photo)) {
+                    matches.add(photo);
+                }
+            }
+        }
+        matches.sort(getSortChoice().comparator());
+        DefaultListModel<Photo> filtered = new DefaultListModel<>();
+        for (Photo match : matches) {
+            filtered.addElement(match);
+        }
+        menuList.setModel(filtered);
+    }
+
+    /**
+     * Asks the user for the tags of a photo and updates them in the repository
+     *
+     * @param photo the photo whose tags are edited
+     */
+    private void editTags(Photo photo) {
+        List<String> current = new ArrayList<>();
+        for (Tag tag : photo.getTags()) {
+            current.add(tag.getName());
+        }
+        String input = (String) JOptionPane.showInputDialog(frame, "Tags, separated by commas:",
+                "Tags of " + photo.getName(), JOptionPane.PLAIN_MESSAGE, null, null, String.join(", ", current));
+        if (input == null) {
+            return;
+        }
+        repository.setTags(photo, Arrays.asList(input.split(",")));
+        applyFilters();
     }
 
     /**
@@ -196,99 +456,358 @@ public class ImageRepoGUI {
      * @return the photo object that was selected in the interface or null if none exists
      */
     private Photo getSelectedPhotoObject() {
-        Photo selected = null;
-        if (menuList.getSelectedValue() != null) {
-            JPanel selectedPanel = (JPanel) menuList.getSelectedValue();
-            Component[] components = selectedPanel.getComponents();
-            for (int i = 0; i < components.length; i++) {
-                if (components[i] instanceof JLabel) {
-                    JLabel nameLabel = (JLabel) components[i];
-                    String name = nameLabel.getText();
-                    for (Photo photo : photoList) {
-                        if (photo.getName().equals(name)) {
-                            selected = photo;
-                        }
-                    }
-                }
+        Photo selected = menuList.getSelectedValue();
+        // the photo may have been deleted from the repository before its entry left the list
+        return selected == null ? null : repository.get(selected.getId());
+    }
+
+    /**
+     * Creates the scroll plane which shows the images in the repository as a grid. The scroll pane
+     * is only created once, uploads and deletes update the list model which updates the JList.
+     * The JList only paints the cells in view, and only the thumbnails of the cells in or near
+     * the view are loaded, so scrolling costs the same no matter how many photos there are.
+     */
+    public void initializeImageScrollPane() {
+        menuList = new JList<>(photoList);
+        menuList.setCellRenderer(new menuListRenderer());
+        menuList.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+        menuList.setVisibleRowCount(-1);
+        // a fixed cell size stops the JList from measuring every entry to size itself
+        menuList.setFixedCellHeight(CELL_HEIGHT);
+        menuList.setFixedCellWidth(CELL_WIDTH);
+
+        scrollPane = new JScrollPane(menuList);
+        scrollPane.setBounds(10, 295, 530, 275);
+        scrollPane.setFont(textFont);
+        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(CELL_HEIGHT / 4);
+        panel.add(scrollPane);
+
+        // the cells in view change when scrolling, when the list changes and when the filter changes
+        scrollPane.getViewport().addChangeListener(e -> scheduleThumbnailRequest());
+        menuList.addPropertyChangeListener("model", e -> scheduleThumbnailRequest());
+        photoList.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                scheduleThumbnailRequest();
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                scheduleThumbnailRequest();
             }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                scheduleThumbnailRequest();
+            }
+        });
+    }
+
+    /**
+     * Requests the thumbnails of the cells in view once the current events have been handled, so
+     * a burst of scroll events only makes a single request
+     */
+    private void scheduleThumbnailRequest() {
+        if (!thumbnailRequestScheduled) {
+            thumbnailRequestScheduled = true;
+            SwingUtilities.invokeLater(this::requestVisibleThumbnails);
         }
-        return selected;
     }
 
     /**
-     * Creates the scroll plane which lists out the images in the repository
+     * Requests the thumbnails of the cells in view, followed by the cells one view below and above
+     * them so they are ready when scrolling on. Thumbnails of cells which were scrolled past and
+     * are not loaded yet are dropped from the previous request.
+     */
+    private void requestVisibleThumbnails() {
+        thumbnailRequestScheduled = false;
+        ListModel<Photo> model = menuList.getModel();
+        int first = menuList.getFirstVisibleIndex();
+        int last = menuList.getLastVisibleIndex();
+        if (first < 0 || last < 0) {
+            repository.requestThumbnails(Collections.emptyList());
+            return;
+        }
+        int ahead = last - first + 1;
+        List<Photo> wanted = new ArrayList<>(3 * ahead);
+        for (int i = first; i <= last; i++) {
+            wanted.add(model.getElementAt(i));
+        }
+        for (int i = 1; i <= ahead; i++) {
+            if (last + i < model.getSize()) {
+                wanted.add(model.getElementAt(last + i));
+            }
+            if (first - i >= 0) {
+                wanted.add(model.getElementAt(first - i));
+            }
+        }
+        repository.requestThumbnails(wanted);
+    }
+
+    /**
+     * Adds photos to the JList at their place in the chosen order. Each photo is placed with a
+     * binary search, unless there are at least as many new photos as listed ones (such as when the
+     * repository is opened), then the list is read again from the sorted index of the repository
+     * instead. The repository never reuses the name of a photo which it already holds, so no
+     * entries have to be replaced.
      *
-     * @param hasInitialized true if calling method to update scroll plane, false otherwise
+     * @param photos the added photos
      */
-    public void initializeImageScrollPane(boolean hasInitialized) {
-        if (hasInitialized) {
-            photoList.clear();
-            initalizePhotoList();
-
-            panel.remove(scrollPane);
-            createScrollPane();
-
-            panel.repaint();
-            panel.add(scrollPane);
-            frame.validate();
-            frame.setVisible(true);
+    private void addPhotoEntries(List<Photo> photos) {
+        if (photos.size() >= photoList.size()) {
+            reloadPhotoEntries();
         } else {
-            createScrollPane();
-            panel.add(scrollPane);
+            Comparator<Photo> comparator = getSortChoice().comparator();
+            for (Photo photo : photos) {
+                insertPhotoEntry(photo, comparator);
+            }
+        }
+        if (menuList != null) {
+            applyFilters();
         }
     }
 
     /**
-     * Helper method to create the scroll plane
+     * Helper method which inserts a photo into the sorted list model, unless it is listed already
      */
-    private void createScrollPane() {
-        scrollPane = new JScrollPane(getScrollPaneEntries());
-        scrollPane.setBounds(10, 190, 530, 275);
-        scrollPane.setFont(textFont);
-        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+    private void insertPhotoEntry(Photo photo, Comparator<Photo> comparator) {
+        int low = 0;
+        int high = photoList.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int compared = comparator.compare(photoList.get(middle), photo);
+            if (compared == 0) {
+                return;
+            } else if (compared < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        photoList.add(low, photo);
+    }
+
+    /**
+     * Fills the list model with all photos in the chosen order, reading them from the repository
+     * a page at a time
+     */
+    private void reloadPhotoEntries() {
+        SortChoice choice = getSortChoice();
+        List<Photo> sorted = new ArrayList<>(repository.size());
+        SortedPhotoIndex.Cursor cursor = SortedPhotoIndex.Cursor.first(choice.order, choice.descending);
+        while (cursor != null) {
+            SortedPhotoIndex.Page page = repository.listSorted(cursor, RELOAD_PAGE_SIZE);
+            sorted.addAll(page.getPhotos());
+            cursor = page.getNext();
+        }
+        photoList.clear();
+        photoList.ensureCapacity(sorted.size());
+        for (Photo photo : sorted) {
+            photoList.addElement(photo);
+        }
+    }
+
+    /**
+     * @return the order chosen in the sort box, oldest first until the box is created
+     */
+    private SortChoice getSortChoice() {
+        return sortBox == null ? SortChoice.OLDEST : (SortChoice) sortBox.getSelectedItem();
     }
 
     /**
-     * Helper method to create the JList to be add in the scroll pane from the photos
-     * in photoList
+     * Removes a photo from the JList, the selected entry is removed without searching the list
      *
-     * @return A formatted JList object
+     * @param photo the removed photo
      */
-    private JList getScrollPaneEntries() {
-        menuList = new JList();
-        menuList.setCellRenderer(new menuListRenderer());
-        Object[] panels = new Object[photoList.size()];
-        int index = 0;
-
-        for (Photo photo : photoList) {
-            Icon thumbnail = new ImageIcon(photo.getThumbnail());
-            JLabel entryLabel = new JLabel(photo.getName(), thumbnail, JLabel.LEFT);
-            JPanel entryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-            entryPanel.add(entryLabel);
-            panels[index] = entryPanel;
-            index++;
-        }
-        menuList.setListData(panels);
-        return menuList;
+    private void removePhotoEntry(Photo photo) {
+        if (menuList != null && menuList.getModel() == photoList && menuList.getSelectedValue() == photo) {
+            photoList.remove(menuList.getSelectedIndex());
+        } else {
+            photoList.removeElement(photo);
+        }
+        if (similarResults != null) {
+            similarResults.removeElement(photo);
+        }
+        if (menuList != null) {
+            applyFilters();
+        }
+    }
+
+    /**
+     * Helper class which updates the interface when the repository changes. The repository calls
+     * it from background threads, so the updates are handed to the event dispatch thread.
+     */
+    private class RepositoryListener implements PhotoRepository.Listener {
+        @Override
+        public void photosAdded(List<Photo> added) {
+            SwingUtilities.invokeLater(() -> addPhotoEntries(added));
+        }
+
+        @Override
+        public void photoRemoved(Photo removed) {
+            SwingUtilities.invokeLater(() -> removePhotoEntry(removed));
+        }
+
+        @Override
+        public void thumbnailLoaded(Photo photo) {
+            SwingUtilities.invokeLater(ImageRepoGUI.this::updateThumbnailEntries);
+        }
+    }
+
+    /**
+     * Helper enum for the orders which can be chosen in the sort box
+     */
+    private enum SortChoice {
+        OLDEST("Oldest first", SortedPhotoIndex.Order.DATE_ADDED, false),
+        NEWEST("Newest first", SortedPhotoIndex.Order.DATE_ADDED, true),
+        NAME("Name", SortedPhotoIndex.Order.NAME, false),
+        LARGEST("Largest first", SortedPhotoIndex.Order.FILE_SIZE, true);
+
+        private final String label;
+        private final SortedPhotoIndex.Order order;
+        private final boolean descending;
+
+        SortChoice(String label, SortedPhotoIndex.Order order, boolean descending) {
+            this.label = label;
+            this.order = order;
+            this.descending = descending;
+        }
+
+        Comparator<Photo> comparator() {
+            return descending ? order.comparator().reversed() : order.comparator();
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Helper class which filters the list again whenever the text of a filter field changes
+     */
+    private class FilterListener implements DocumentListener {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            filtersChanged();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            filtersChanged();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            filtersChanged();
+        }
+    }
+
+    /**
+     * Helper class which shows the progress of an import in the interface
+     */
+    private class ImportProgressListener implements ImportPipeline.Listener {
+        private final List<String> failures = new ArrayList<>();
+        private int duplicates;
+
+        @Override
+        public void photosImported(List<Photo> photos) {
+            // the photos are added to the list by the repository listener
+        }
+
+        @Override
+        public void progress(int completed, int total) {
+            SwingUtilities.invokeLater(() -> {
+                importProgressBar.setMaximum(total);
+                importProgressBar.setValue(completed);
+                if (completed >= total) {
+                    importProgressBar.setVisible(false);
+                    if (!failures.isEmpty()) {
+                        errorLabel.setText("Could not import " + failures.size() + " file(s)");
+                    } else if (duplicates > 0) {
+                        errorLabel.setText("Skipped " + duplicates + " file(s) already in the repository");
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void duplicateSkipped(Path source, Photo existing) {
+            SwingUtilities.invokeLater(() -> duplicates++);
+        }
+
+        @Override
+        public void importFailed(Path source, IOException reason) {
+            SwingUtilities.invokeLater(() -> failures.add(source.toString()));
+        }
     }
 
     /**
-     * Helper class for rendering each entry in the JList
+     * Helper class for rendering each cell of the grid. A single label is reused for every
+     * cell, it is only given the name and the thumbnail of the photo being painted.
      */
     private class menuListRenderer extends DefaultListCellRenderer {
+        private final ThumbnailIcon icon = new ThumbnailIcon();
+
         @Override
         public Component getListCellRendererComponent(
                 JList list, Object value, int index,
                 boolean isSelected, boolean cellHasFocus) {
 
-            if (value instanceof JPanel) {
-                Component component = (Component) value;
-                component.setForeground(Color.WHITE);
-                component.setBackground(isSelected ? new Color(0f,0f,1f,.5f ) : Color.white);
-                return component;
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            setHorizontalAlignment(SwingConstants.CENTER);
+            setHorizontalTextPosition(SwingConstants.CENTER);
+            setVerticalTextPosition(SwingConstants.BOTTOM);
+            setFont(getFont().deriveFont(Font.PLAIN, 11f));
+            if (value instanceof Photo) {
+                Photo photo = (Photo) value;
+                setText(photo.getName());
+                icon.setImage(photo.getThumbnail());
+                setIcon(icon);
             } else {
-                return new JLabel("???");
+                setText("???");
+                setIcon(null);
+            }
+            setForeground(Color.BLACK);
+            setBackground(isSelected ? new Color(0f,0f,1f,.5f ) : Color.white);
+            setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+            return this;
+        }
+    }
+
+    /**
+     * Helper class for an icon which paints a thumbnail, or a placeholder while the thumbnail is
+     * still loading. Unlike ImageIcon it does not wait for the image to load when it is created.
+     */
+    private static class ThumbnailIcon implements Icon {
+        private Image image;
+
+        void setImage(Image image) {
+            this.image = image;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            if (image == null) {
+                g.setColor(PLACEHOLDER_COLOR);
+                g.fillRect(x, y, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+                return;
             }
+            // thumbnails keep the aspect ratio of the photo, so they are centered in the square
+            int width = image.getWidth(c);
+            int height = image.getHeight(c);
+            g.drawImage(image, x + (THUMBNAIL_SIZE - width) / 2, y + (THUMBNAIL_SIZE - height) / 2, c);
+        }
+
+        @Override
+        public int getIconWidth() {
+            return THUMBNAIL_SIZE;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return THUMBNAIL_SIZE;
         }
     }
 }
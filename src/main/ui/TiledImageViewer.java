@@ -0,0 +1,217 @@
+package ui;
+
+import model.TiledImage;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A component which shows an image of any size, zoomed with the mouse wheel and panned by dragging.
+ * The image starts out fitted into the component and a double click fits it again. Only the tiles
+ * on screen and a ring around them are decoded, at the coarsest level which has enough pixels for
+ * the zoom. Until a tile is decoded the coarser tiles which are already decoded, or the preview
+ * the viewer was given, are shown scaled up in its place.
+ */
+public class TiledImageViewer extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private static final double MAX_SCALE = 8;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int DECODER_THREADS = 2;
+
+    private final TiledImage image;
+    private final Image preview;
+    // screen pixels per image pixel, and the image pixel at the top left corner of the component
+    private double scale = 1;
+    private double originX;
+    private double originY;
+    // the image is fitted into the component until the user zooms or pans
+    private boolean fitted = true;
+    private Point dragStart;
+
+    /**
+     * Constructor for a viewer, which starts decoding tiles once it is shown
+     *
+     * @param file the image file
+     * @param preview a small version of the whole image to show until tiles are decoded, or null
+     * @throws IOException if the file is not a readable image
+     */
+    public TiledImageViewer(File file, Image preview) throws IOException {
+        this.preview = preview;
+        this.image = new TiledImage(file, DECODER_THREADS, cacheBytesForScreen(),
+                tile -> SwingUtilities.invokeLater(this::repaint));
+        setBackground(Color.DARK_GRAY);
+        setOpaque(true);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart != null) {
+                    originX -= (e.getX() - dragStart.x) / scale;
+                    originY -= (e.getY() - dragStart.y) / scale;
+                    dragStart = e.getPoint();
+                    fitted = false;
+                    viewChanged();
+                }
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    fitted = true;
+                    viewChanged();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomAt(e.getPoint(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                viewChanged();
+            }
+        });
+    }
+
+    /**
+     * @return the width and height of the image at full resolution
+     */
+    public Dimension getImageSize() {
+        return new Dimension(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Stops decoding tiles and drops the decoded ones, call it when the viewer is no longer shown
+     */
+    public void close() {
+        image.close();
+    }
+
+    /**
+     * Zooms in or out keeping the image pixel under a point of the component in place
+     *
+     * @param point the point in component coordinates
+     * @param factor how much larger the image is shown afterwards, below 1 to zoom out
+     */
+    public void zoomAt(Point point, double factor) {
+        double newScale = Math.max(Math.min(fitScale(), 1), Math.min(MAX_SCALE, scale * factor));
+        originX += point.x / scale - point.x / newScale;
+        originY += point.y / scale - point.y / newScale;
+        scale = newScale;
+        fitted = false;
+        viewChanged();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D graphics = (Graphics2D) g.create();
+        graphics.setColor(getBackground());
+        graphics.fillRect(0, 0, getWidth(), getHeight());
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        if (preview != null) {
+            drawRegion(graphics, preview, new Rectangle(image.getWidth(), image.getHeight()));
+        }
+        // coarse tiles first, so the finer ones are drawn over them wherever they are decoded
+        Rectangle visible = visibleRegion();
+        for (int level = image.getMaxLevel(); level >= image.levelFor(scale); level--) {
+            for (TiledImage.Tile tile : image.tilesIn(level, visible)) {
+                BufferedImage decoded = image.getTile(tile);
+                if (decoded != null) {
+                    drawRegion(graphics, decoded, image.regionOf(tile));
+                }
+            }
+        }
+        graphics.dispose();
+    }
+
+    /**
+     * Helper method which fits the image again if it has not been zoomed or panned, keeps it on
+     * screen, requests the tiles for what is now shown and repaints
+     */
+    private void viewChanged() {
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        if (fitted) {
+            scale = Math.min(fitScale(), 1);
+        }
+        originX = clampOrigin(originX, image.getWidth(), getWidth());
+        originY = clampOrigin(originY, image.getHeight(), getHeight());
+        image.request(image.wantedTiles(image.levelFor(scale), visibleRegion()));
+        repaint();
+    }
+
+    /**
+     * Helper method which keeps the image on screen along one axis: an image smaller than the
+     * component is centred, a larger one cannot be panned past its edges
+     */
+    private double clampOrigin(double origin, int imageLength, int componentLength) {
+        double shown = componentLength / scale;
+        if (shown >= imageLength) {
+            return (imageLength - shown) / 2;
+        }
+        return Math.max(0, Math.min(imageLength - shown, origin));
+    }
+
+    /**
+     * Helper method which calculates the scale at which the whole image fits into the component
+     */
+    private double fitScale() {
+        return Math.min((double) getWidth() / image.getWidth(), (double) getHeight() / image.getHeight());
+    }
+
+    /**
+     * Helper method which gets the region of the image on screen in full resolution pixel coordinates
+     */
+    private Rectangle visibleRegion() {
+        int x = (int) Math.floor(originX);
+        int y = (int) Math.floor(originY);
+        return new Rectangle(x, y, (int) Math.ceil(originX + getWidth() / scale) - x,
+                (int) Math.ceil(originY + getHeight() / scale) - y);
+    }
+
+    /**
+     * Helper method which draws an image over a region of the full resolution image. Both edges are
+     * rounded the same way, so neighbouring tiles meet without gaps.
+     */
+    private void drawRegion(Graphics2D graphics, Image decoded, Rectangle region) {
+        int left = (int) Math.round((region.x - originX) * scale);
+        int top = (int) Math.round((region.y - originY) * scale);
+        int right = (int) Math.round((region.x + region.width - originX) * scale);
+        int bottom = (int) Math.round((region.y + region.height - originY) * scale);
+        graphics.drawImage(decoded, left, top, right - left, bottom - top, null);
+    }
+
+    /**
+     * Helper method which calculates how many bytes of decoded tiles are kept: twice what the tiles
+     * covering the screen and the prefetched ring around it take up when they are shown at full
+     * size, which leaves room for the coarser levels and for the level shown before the last zoom
+     */
+    private static long cacheBytesForScreen() {
+        Rectangle screen = GraphicsEnvironment.isHeadless() ? new Rectangle(1920, 1080)
+                : GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        // partly visible tiles at both edges, and the ring
+        long columns = screen.width / TiledImage.TILE_SIZE + 4;
+        long rows = screen.height / TiledImage.TILE_SIZE + 4;
+        return 2 * columns * rows * TiledImage.TILE_SIZE * TiledImage.TILE_SIZE * 4;
+    }
+}
@@ -0,0 +1,94 @@
+import model.ContentHash;
+import model.ContentHashIndex;
+import model.Photo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ContentHashIndex and ContentHash classes
+ */
+public class ContentHashIndexTest {
+
+    ContentHashIndex index;
+    Photo doggo;
+    Path directory;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        index = new ContentHashIndex();
+        doggo = new Photo("doggo");
+        doggo.setFileInfo(1, 1, 1, 1, "aa");
+        directory = Files.createTempDirectory("hash");
+    }
+
+    @AfterEach
+    void runAfter() throws IOException {
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testAddAndGet() {
+        assertNull(index.add(doggo));
+        assertSame(index.get("aa"), doggo);
+
+        Photo copy = new Photo("doggo (2)");
+        copy.setFileInfo(1, 1, 1, 1, "aa");
+        assertSame(index.add(copy), doggo);
+        assertEquals(index.size(), 1);
+    }
+
+    @Test
+    void testPhotoWithoutHashIsIgnored() {
+        assertNull(index.add(new Photo("Cat")));
+        assertEquals(index.size(), 0);
+    }
+
+    @Test
+    void testClaimAndRelease() {
+        Photo importing = new Photo("Cat");
+        assertNull(index.claim("bb", importing));
+        assertNull(index.claim("bb", importing));
+        assertSame(index.claim("bb", new Photo("Cat (2)")), importing);
+
+        index.release("bb", importing);
+        assertNull(index.get("bb"));
+    }
+
+    @Test
+    void testRemoveOnlyRemovesOwnHash() {
+        index.add(doggo);
+        Photo other = new Photo("other");
+        other.setFileInfo(1, 1, 1, 1, "aa");
+        index.remove(other);
+        assertSame(index.get("aa"), doggo);
+
+        index.remove(doggo);
+        assertNull(index.get("aa"));
+    }
+
+    @Test
+    void testCopyHashesWhileCopying() throws IOException {
+        Path source = directory.resolve("source.jpg");
+        Files.write(source, new byte[] {1, 2, 3, 4, 5});
+        Path target = directory.resolve("target.jpg");
+
+        String hash = ContentHash.copy(source, target);
+        assertEquals(hash, ContentHash.sha256(source));
+        assertArrayEquals(Files.readAllBytes(target), new byte[] {1, 2, 3, 4, 5});
+        assertEquals(ContentHash.toHex(ContentHash.fromHex(hash)), hash);
+
+        // copying never overwrites an existing file
+        assertThrows(FileAlreadyExistsException.class, () -> ContentHash.copy(source, target));
+    }
+}
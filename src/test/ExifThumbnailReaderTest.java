@@ -0,0 +1,110 @@
+import model.ExifThumbnailReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ExifThumbnailReader class
+ */
+public class ExifThumbnailReaderTest {
+
+    File imageFile;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        imageFile = File.createTempFile("exif", ".jpg");
+    }
+
+    @AfterEach
+    void runAfter() {
+        imageFile.delete();
+    }
+
+    @Test
+    void testReadEmbeddedThumbnail() throws IOException {
+        BufferedImage thumbnail = new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB);
+        Files.write(imageFile.toPath(), withExifThumbnail(jpegBytes(new BufferedImage(800, 600,
+                BufferedImage.TYPE_INT_RGB)), jpegBytes(thumbnail)));
+
+        BufferedImage read = ExifThumbnailReader.read(imageFile);
+        assertNotNull(read);
+        assertEquals(read.getWidth(), 160);
+        assertEquals(read.getHeight(), 120);
+    }
+
+    @Test
+    void testNoEmbeddedThumbnail() throws IOException {
+        Files.write(imageFile.toPath(), jpegBytes(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB)));
+        assertNull(ExifThumbnailReader.read(imageFile));
+    }
+
+    @Test
+    void testNotAJpeg() throws IOException {
+        Files.write(imageFile.toPath(), new byte[] {1, 2, 3});
+        assertNull(ExifThumbnailReader.read(imageFile));
+    }
+
+    @Test
+    void testMalformedThumbnailLocation() throws IOException {
+        byte[] jpeg = jpegBytes(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB));
+        byte[] thumbnail = jpegBytes(new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB));
+        // offset + length overflows to a negative number
+        Files.write(imageFile.toPath(), withExifThumbnail(jpeg, thumbnail, 0x7FFFFFF0, 0x7FFFFFF0));
+        assertNull(ExifThumbnailReader.read(imageFile));
+        Files.write(imageFile.toPath(), withExifThumbnail(jpeg, thumbnail, 44, thumbnail.length + 1));
+        assertNull(ExifThumbnailReader.read(imageFile));
+        Files.write(imageFile.toPath(), withExifThumbnail(jpeg, thumbnail, 1 << 20, 10));
+        assertNull(ExifThumbnailReader.read(imageFile));
+    }
+
+    /**
+     * Encodes an image as jpeg
+     */
+    static byte[] jpegBytes(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Inserts an EXIF segment holding the given thumbnail right after the start of image marker
+     */
+    static byte[] withExifThumbnail(byte[] jpeg, byte[] thumbnail) {
+        return withExifThumbnail(jpeg, thumbnail, 44, thumbnail.length);
+    }
+
+    /**
+     * Inserts an EXIF segment holding the given thumbnail, with the given offset and length in its
+     * directory even if they do not point at the thumbnail
+     */
+    private static byte[] withExifThumbnail(byte[] jpeg, byte[] thumbnail, int offset, int length) {
+        // TIFF header, an empty IFD0 and an IFD1 with the thumbnail offset and length
+        ByteBuffer tiff = ByteBuffer.allocate(44 + thumbnail.length);
+        tiff.put((byte) 'M').put((byte) 'M').putShort((short) 0x2A).putInt(8);
+        tiff.putShort((short) 0).putInt(14);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(offset);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(length);
+        tiff.putInt(0);
+        tiff.put(thumbnail);
+
+        byte[] header = {'E', 'x', 'i', 'f', 0, 0};
+        int segmentLength = 2 + header.length + tiff.capacity();
+        ByteBuffer result = ByteBuffer.allocate(jpeg.length + 2 + segmentLength);
+        result.put(jpeg, 0, 2);
+        result.put((byte) 0xFF).put((byte) 0xE1).putShort((short) segmentLength);
+        result.put(header).put(tiff.array());
+        result.put(jpeg, 2, jpeg.length - 2);
+        return result.array();
+    }
+}
@@ -0,0 +1,83 @@
+import model.ImageCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ImageCache class
+ */
+public class ImageCacheTest {
+
+    ImageCache cache;
+    BufferedImage small;
+
+    @BeforeEach
+    void runBefore() {
+        // 10 x 10 pixels x 3 bytes per pixel
+        small = new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+        cache = new ImageCache(3 * ImageCache.weigh(small));
+    }
+
+    @Test
+    void testWeigh() {
+        assertEquals(ImageCache.weigh(small), 300);
+        assertEquals(ImageCache.weigh(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)), 400);
+    }
+
+    @Test
+    void testPutAndGet() {
+        assertNull(cache.get("a"));
+        cache.put("a", small);
+        assertSame(cache.get("a"), small);
+        assertEquals(cache.getCurrentBytes(), 300);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        cache.put("a", small);
+        cache.put("b", new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+        cache.put("c", new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+
+        // using a makes b the least recently used image
+        cache.get("a");
+        cache.put("d", new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+
+        assertEquals(cache.size(), 3);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(cache.getCurrentBytes(), 900);
+    }
+
+    @Test
+    void testReplaceKeepsWeightAccurate() {
+        cache.put("a", small);
+        cache.put("a", new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getCurrentBytes(), 300);
+    }
+
+    @Test
+    void testImageLargerThanBudgetIsNotCached() {
+        cache.put("big", new BufferedImage(100, 100, BufferedImage.TYPE_3BYTE_BGR));
+        assertNull(cache.get("big"));
+        assertEquals(cache.getCurrentBytes(), 0);
+    }
+
+    @Test
+    void testShrinkingBudgetAndInvalidate() {
+        cache.put("a", small);
+        cache.put("b", new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+        cache.setMaxBytes(300);
+        assertEquals(cache.size(), 1);
+        assertNotNull(cache.get("b"));
+
+        cache.invalidate("b");
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getCurrentBytes(), 0);
+    }
+}
@@ -0,0 +1,83 @@
+import model.ImageDecoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ImageDecoder class
+ */
+public class ImageDecoderTest {
+
+    File imageFile;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        imageFile = File.createTempFile("decoder", ".jpg");
+        ImageIO.write(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "jpg", imageFile);
+    }
+
+    @AfterEach
+    void runAfter() {
+        imageFile.delete();
+    }
+
+    @Test
+    void testReadSize() throws IOException {
+        assertEquals(ImageDecoder.readSize(imageFile), new Dimension(800, 600));
+    }
+
+    @Test
+    void testSubsamplingFor() {
+        assertEquals(ImageDecoder.subsamplingFor(800, 600, 64, 64), 12);
+        assertEquals(ImageDecoder.subsamplingFor(800, 600, 1920, 1080), 1);
+        assertEquals(ImageDecoder.subsamplingFor(6000, 4000, 1920, 1080), 3);
+        // the width limits how large a panorama is shown, and a portrait photo's height
+        assertEquals(ImageDecoder.subsamplingFor(40000, 2500, 1920, 1080), 20);
+        assertEquals(ImageDecoder.subsamplingFor(3000, 6000, 1920, 1080), 5);
+    }
+
+    @Test
+    void testDecodeIsSubsampled() throws IOException {
+        BufferedImage decoded = ImageDecoder.decode(imageFile, 64, 64);
+        // at least the 64 x 48 the image is shown at
+        assertEquals(decoded.getWidth(), 67);
+        assertEquals(decoded.getHeight(), 50);
+    }
+
+    @Test
+    void testDecodeSmallerThanTarget() throws IOException {
+        BufferedImage decoded = ImageDecoder.decode(imageFile, 1920, 1080);
+        assertEquals(decoded.getWidth(), 800);
+        assertEquals(decoded.getHeight(), 600);
+    }
+
+    @Test
+    void testDecodeRegion() throws IOException {
+        BufferedImage region = ImageDecoder.decodeRegion(imageFile, new Rectangle(100, 100, 200, 100), 2);
+        assertEquals(region.getWidth(), 100);
+        assertEquals(region.getHeight(), 50);
+
+        // regions past the edge of the image are clipped
+        BufferedImage edge = ImageDecoder.decodeRegion(imageFile, new Rectangle(700, 500, 200, 200), 1);
+        assertEquals(edge.getWidth(), 100);
+        assertEquals(edge.getHeight(), 100);
+    }
+
+    @Test
+    void testDecodeNonImage() throws IOException {
+        File text = File.createTempFile("decoder", ".txt");
+        try {
+            assertThrows(IOException.class, () -> ImageDecoder.decode(text, 64, 64));
+        } finally {
+            text.delete();
+        }
+    }
+}
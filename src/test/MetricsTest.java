@@ -0,0 +1,86 @@
+import model.Metrics;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Metrics class
+ */
+public class MetricsTest {
+
+    @Test
+    void testTimer() throws InterruptedException {
+        Metrics.Timer timer = Metrics.DELETE;
+        long count = timer.getCount();
+        long failures = timer.getFailures();
+
+        Metrics.Sample sample = timer.start("doggo");
+        Thread.sleep(5);
+        sample.stop();
+        timer.start("cat").fail(new IOException("no such cat"));
+
+        assertEquals(count + 2, timer.getCount());
+        assertEquals(failures + 1, timer.getFailures());
+        assertEquals("cat: java.io.IOException: no such cat", timer.getLastFailure());
+        assertTrue(timer.getMaxMillis() >= 5);
+        assertTrue(timer.getMeanMillis() > 0);
+        assertTrue(timer.getMedianMillis() <= timer.get99thPercentileMillis());
+        assertTrue(timer.get99thPercentileMillis() <= timer.getMaxMillis());
+        assertSame(timer, Metrics.getTimer("delete"));
+        assertNull(Metrics.getTimer("no such timer"));
+    }
+
+    @Test
+    void testGauge() {
+        LongSupplier first = () -> 1;
+        LongSupplier second = () -> 2;
+        Metrics.gauge("test.gauge", first);
+        assertEquals(1, Metrics.getGaugeValue("test.gauge"));
+        Metrics.gauge("test.gauge", second);
+        assertEquals(2, Metrics.getGaugeValue("test.gauge"));
+
+        // a replaced supplier cannot remove the gauge of its replacement
+        Metrics.removeGauge("test.gauge", first);
+        assertEquals(2, Metrics.getGaugeValue("test.gauge"));
+        Metrics.removeGauge("test.gauge", second);
+        assertEquals(0, Metrics.getGaugeValue("test.gauge"));
+        assertEquals(0, Metrics.getGaugeValue("no such gauge"));
+    }
+
+    @Test
+    void testMBeans() throws Exception {
+        Metrics.COPY.start("doggo").stop();
+        Metrics.gauge("test.mbean", () -> 42);
+        Object count = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("imagerepo:type=Timer,name=\"copy\""), "Count");
+        assertEquals(Metrics.COPY.getCount(), count);
+        Object value = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("imagerepo:type=Gauge,name=\"test.mbean\""), "Value");
+        assertEquals(42L, value);
+    }
+
+    @Test
+    void testWriteCsv() throws IOException {
+        Metrics.gauge("test.csv", () -> 7);
+        StringBuilder csv = new StringBuilder();
+        Metrics.writeCsv(csv, true);
+        // the same line ending on every platform and for every line
+        assertFalse(csv.toString().contains("\r"));
+        String[] lines = csv.toString().split("\n");
+        assertEquals("time,type,name,count,failures,meanMillis,p50Millis,p99Millis,maxMillis", lines[0]);
+        boolean foundTimer = false;
+        boolean foundGauge = false;
+        for (String line : lines) {
+            assertEquals(9, line.split(",", -1).length);
+            foundTimer |= line.contains(",timer,decode,");
+            foundGauge |= line.endsWith(",gauge,test.csv,7,,,,,");
+        }
+        assertTrue(foundTimer);
+        assertTrue(foundGauge);
+    }
+}
@@ -0,0 +1,201 @@
+import model.Photo;
+import model.PhotoCatalog;
+import model.Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the PhotoCatalog class
+ */
+public class PhotoCatalogTest {
+
+    Path catalogFile;
+    PhotoCatalog catalog;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        catalogFile = Files.createTempFile("catalog", ".log");
+        Files.delete(catalogFile);
+        catalog = new PhotoCatalog(catalogFile);
+        catalog.load();
+    }
+
+    @AfterEach
+    void runAfter() throws IOException {
+        catalog.close();
+        Files.deleteIfExists(catalogFile);
+    }
+
+    @Test
+    void testPutAndReload() throws IOException {
+        Photo doggo = new Photo("doggo", new Date(1234));
+        doggo.setDescription("The best doggo");
+        doggo.addTag(new Tag("Dog"));
+        doggo.setFileInfo(640, 480, 1000, 5678, "00ff");
+        doggo.setPerceptualHash(0x0123456789abcdefL);
+        catalog.put(doggo);
+        catalog.close();
+
+        Map<String, Photo> loaded = new PhotoCatalog(catalogFile).load();
+        assertEquals(loaded.size(), 1);
+        Photo reloaded = loaded.get("doggo");
+        assertEquals(reloaded.getId(), doggo.getId());
+        assertEquals(reloaded.getDateAdded(), new Date(1234));
+        assertEquals(reloaded.getDescription(), "The best doggo");
+        assertTrue(reloaded.getTags().contains(new Tag("Dog")));
+        assertEquals(reloaded.getWidth(), 640);
+        assertEquals(reloaded.getHeight(), 480);
+        assertEquals(reloaded.getFileSize(), 1000);
+        assertEquals(reloaded.getLastModified(), 5678);
+        assertEquals(reloaded.getContentHash(), "00ff");
+        assertTrue(reloaded.hasPerceptualHash());
+        assertEquals(reloaded.getPerceptualHash(), 0x0123456789abcdefL);
+    }
+
+    @Test
+    void testUpgradeVersionOneCatalog() throws IOException {
+        catalog.close();
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(catalogFile))) {
+            output.writeInt(0x49524354);
+            output.writeInt(1);
+            output.writeByte(1);
+            byte[] name = "doggo".getBytes(StandardCharsets.UTF_8);
+            output.writeInt(name.length);
+            output.write(name);
+            output.writeLong(1234);
+            output.writeInt(640);
+            output.writeInt(480);
+            output.writeLong(1000);
+            output.writeLong(5678);
+            output.writeByte(0);
+            output.writeBoolean(false);
+            output.writeInt(0);
+        }
+
+        catalog = new PhotoCatalog(catalogFile);
+        Photo doggo = catalog.load().get("doggo");
+        assertEquals(doggo.getWidth(), 640);
+        assertFalse(doggo.hasPerceptualHash());
+
+        doggo.setPerceptualHash(42);
+        catalog.put(doggo);
+        catalog.close();
+        Photo reloaded = new PhotoCatalog(catalogFile).load().get("doggo");
+        assertEquals(reloaded.getPerceptualHash(), 42);
+        // the id given to the photo when upgrading is kept
+        assertEquals(reloaded.getId(), doggo.getId());
+    }
+
+    @Test
+    void testLaterRecordsReplaceEarlierOnes() throws IOException {
+        Photo doggo = new Photo("doggo");
+        catalog.put(doggo);
+        doggo.setDescription("Updated");
+        catalog.put(doggo);
+        catalog.put(new Photo("Cat"));
+        catalog.remove("Cat");
+        catalog.close();
+
+        PhotoCatalog reopened = new PhotoCatalog(catalogFile);
+        Map<String, Photo> loaded = reopened.load();
+        assertEquals(loaded.size(), 1);
+        assertEquals(loaded.get("doggo").getDescription(), "Updated");
+        assertNull(loaded.get("doggo").getContentHash());
+        assertEquals(reopened.getRecordCount(), 4);
+        reopened.close();
+    }
+
+    @Test
+    void testReplacedRecordsAreNotTagged() throws IOException {
+        Photo doggo = new Photo("doggo");
+        doggo.addTag(new Tag("Dog"));
+        catalog.put(doggo);
+        doggo.setDescription("Updated");
+        catalog.put(doggo);
+        Photo cat = new Photo("Cat");
+        cat.addTag(new Tag("Dog"));
+        catalog.put(cat);
+        catalog.remove("Cat");
+        catalog.close();
+
+        PhotoCatalog reopened = new PhotoCatalog(catalogFile);
+        Photo loaded = reopened.load().get("doggo");
+        Tag dog = loaded.getTags().iterator().next();
+        assertEquals(dog.getName(), "Dog");
+        assertEquals(dog.getPhotos().size(), 1);
+        assertTrue(dog.getPhotos().contains(loaded));
+        reopened.close();
+    }
+
+    @Test
+    void testCutOffRecordIsDropped() throws IOException {
+        catalog.put(new Photo("doggo"));
+        catalog.put(new Photo("Cat"));
+        catalog.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(catalogFile.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        catalog = new PhotoCatalog(catalogFile);
+        Map<String, Photo> loaded = catalog.load();
+        assertEquals(loaded.size(), 1);
+        assertTrue(loaded.containsKey("doggo"));
+
+        // the log can be appended to again after the cut off record was dropped
+        catalog.put(new Photo("woof_irl"));
+        catalog.close();
+        assertEquals(new PhotoCatalog(catalogFile).load().size(), 2);
+    }
+
+    @Test
+    void testCorruptHashLengthIsCutOff() throws IOException {
+        catalog.put(new Photo("doggo"));
+        catalog.close();
+        long catOffset = Files.size(catalogFile);
+        catalog = new PhotoCatalog(catalogFile);
+        catalog.load();
+        catalog.put(new Photo("Cat"));
+        catalog.close();
+
+        // the length of the content hash comes after the type, the name, the id, the date and the file info
+        try (RandomAccessFile file = new RandomAccessFile(catalogFile.toFile(), "rw")) {
+            file.seek(catOffset + 1 + 4 + 3 + 8 + 8 + 4 + 4 + 8 + 8);
+            file.writeByte(0x90);
+        }
+
+        catalog = new PhotoCatalog(catalogFile);
+        Map<String, Photo> loaded = catalog.load();
+        assertEquals(loaded.size(), 1);
+        assertTrue(loaded.containsKey("doggo"));
+    }
+
+    @Test
+    void testCompaction() throws IOException {
+        Photo doggo = new Photo("doggo");
+        for (int i = 0; i < 999; i++) {
+            catalog.put(doggo);
+        }
+        assertEquals(catalog.getRecordCount(), 999);
+
+        // the 1000th record pushes the log over the compaction threshold
+        catalog.put(doggo);
+        assertEquals(catalog.getRecordCount(), 1);
+        assertEquals(catalog.size(), 1);
+        catalog.close();
+
+        assertEquals(new PhotoCatalog(catalogFile).load().size(), 1);
+    }
+}
@@ -0,0 +1,117 @@
+import model.PhotoFolderWatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the PhotoFolderWatcher class, using a temporary folder
+ */
+public class PhotoFolderWatcherTest {
+
+    Path directory;
+    PhotoFolderWatcher watcher;
+    LinkedBlockingQueue<Batch> batches;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        directory = Files.createTempDirectory("watcher test");
+        batches = new LinkedBlockingQueue<>();
+        watcher = new PhotoFolderWatcher(directory, new PhotoFolderWatcher.Listener() {
+            @Override
+            public void photosChanged(Set<String> present, Set<String> deleted) {
+                batches.add(new Batch(present, deleted));
+            }
+
+            @Override
+            public void rescanNeeded() {
+            }
+        });
+    }
+
+    @AfterEach
+    void runAfter() throws IOException {
+        watcher.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void testCreateAndDelete() throws IOException, InterruptedException {
+        Files.write(directory.resolve("doggo.jpg"), new byte[]{1});
+        Files.write(directory.resolve("doggo.jpg"), new byte[]{1, 2});
+        Files.write(directory.resolve("notes.txt"), new byte[]{1});
+        Batch batch = batches.poll(30, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(Collections.singleton("doggo"), batch.present);
+        assertTrue(batch.deleted.isEmpty());
+
+        Files.delete(directory.resolve("doggo.jpg"));
+        batch = batches.poll(30, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertTrue(batch.present.isEmpty());
+        assertEquals(Collections.singleton("doggo"), batch.deleted);
+    }
+
+    @Test
+    void testChangesAreBatched() throws IOException, InterruptedException {
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            Files.write(directory.resolve("doggo " + i + ".jpeg"), new byte[]{1});
+            expected.add("doggo " + i);
+        }
+        Set<String> reported = new HashSet<>();
+        while (!reported.equals(expected)) {
+            Batch batch = batches.poll(30, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            reported.addAll(batch.present);
+        }
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void testNewSubfolderIsWatched() throws IOException, InterruptedException {
+        Path shard = Files.createDirectory(directory.resolve("3f"));
+        Files.write(shard.resolve("doggo.jpg"), new byte[]{1});
+        Set<String> reported = new HashSet<>();
+        while (!reported.contains("doggo")) {
+            Batch batch = batches.poll(30, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            reported.addAll(batch.present);
+        }
+
+        Files.write(shard.resolve("cat.jpg"), new byte[]{1});
+        Batch batch = batches.poll(30, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(Collections.singleton("cat"), batch.present);
+    }
+
+    /**
+     * The names the watcher reported in one call
+     */
+    static class Batch {
+        final Set<String> present;
+        final Set<String> deleted;
+
+        Batch(Set<String> present, Set<String> deleted) {
+            this.present = present;
+            this.deleted = deleted;
+        }
+    }
+}
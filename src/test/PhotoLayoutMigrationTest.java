@@ -0,0 +1,63 @@
+import model.PhotoLayoutMigration;
+import model.PhotoPaths;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the PhotoLayoutMigration class, using a temporary folder
+ */
+public class PhotoLayoutMigrationTest {
+
+    Path directory;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        directory = Files.createTempDirectory("migration test");
+        Files.createDirectories(directory.resolve("photos"));
+        Files.createDirectories(directory.resolve("thumbnails").resolve("256"));
+        Files.write(directory.resolve("photos").resolve("doggo.jpg"), new byte[]{1});
+        Files.write(directory.resolve("thumbnails").resolve("doggo.jpg"), new byte[]{2});
+        Files.write(directory.resolve("thumbnails").resolve("256").resolve("doggo.jpg"), new byte[]{3});
+        Files.write(directory.resolve("photos").resolve("notes.txt"), new byte[]{4});
+    }
+
+    @AfterEach
+    void runAfter() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void testMigrate() throws IOException {
+        assertEquals(3, PhotoLayoutMigration.migrate(directory));
+
+        PhotoPaths paths = PhotoPaths.detect(directory);
+        assertTrue(paths.isSharded());
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(paths.imageFile("doggo")));
+        assertArrayEquals(new byte[]{2}, Files.readAllBytes(paths.thumbnailFile("doggo")));
+        assertArrayEquals(new byte[]{3}, Files.readAllBytes(paths.thumbnailFile("doggo", 256)));
+        assertFalse(Files.exists(directory.resolve("photos").resolve("doggo.jpg")));
+        assertTrue(Files.exists(directory.resolve("photos").resolve("notes.txt")));
+        assertEquals(1, paths.imageFolders().size());
+    }
+
+    @Test
+    void testMigrateTwice() throws IOException {
+        PhotoLayoutMigration.migrate(directory);
+        assertEquals(0, PhotoLayoutMigration.migrate(directory));
+        assertTrue(Files.exists(PhotoPaths.detect(directory).imageFile("doggo")));
+    }
+}
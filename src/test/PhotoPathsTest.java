@@ -0,0 +1,62 @@
+import model.PhotoPaths;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the PhotoPaths class
+ */
+public class PhotoPathsTest {
+
+    Path project = Paths.get("project");
+
+    @Test
+    void testFlatPaths() {
+        PhotoPaths paths = new PhotoPaths(project, false);
+        assertFalse(paths.isSharded());
+        assertEquals(project.resolve("photos").resolve("doggo.jpg"), paths.imageFile("doggo"));
+        assertEquals(project.resolve("thumbnails").resolve("doggo.jpg"), paths.thumbnailFile("doggo"));
+        assertEquals(project.resolve("thumbnails").resolve("256").resolve("doggo.jpg"), paths.thumbnailFile("doggo", 256));
+        assertEquals(Collections.singletonList(project.resolve("photos")), paths.imageFolders());
+    }
+
+    @Test
+    void testShardedPaths() {
+        PhotoPaths paths = new PhotoPaths(project, true);
+        String shard = PhotoPaths.shardName("doggo");
+        assertEquals(project.resolve("photos").resolve(shard).resolve("doggo.jpg"), paths.imageFile("doggo"));
+        assertEquals(project.resolve("thumbnails").resolve(shard).resolve("doggo.jpg"), paths.thumbnailFile("doggo"));
+        assertEquals(project.resolve("thumbnails").resolve("256").resolve(shard).resolve("doggo.jpg"),
+                paths.thumbnailFile("doggo", 256));
+        assertTrue(paths.imageFolders().isEmpty());
+    }
+
+    @Test
+    void testShardName() {
+        // the folder of a photo must never change, or its files would not be found any more
+        assertEquals("a7", PhotoPaths.shardName("doggo"));
+        assertEquals("00", PhotoPaths.shardName(""));
+        assertTrue(PhotoPaths.shardName("good boi").matches("[0-9a-f]{2}"));
+    }
+
+    @Test
+    void testDetect() throws IOException {
+        Path directory = Files.createTempDirectory("paths test");
+        try {
+            assertFalse(PhotoPaths.detect(directory).isSharded());
+            Files.createDirectories(directory.resolve("photos"));
+            Files.createFile(directory.resolve("photos").resolve(PhotoPaths.SHARDED_MARKER));
+            assertTrue(PhotoPaths.detect(directory).isSharded());
+        } finally {
+            Files.delete(directory.resolve("photos").resolve(PhotoPaths.SHARDED_MARKER));
+            Files.delete(directory.resolve("photos"));
+            Files.delete(directory);
+        }
+    }
+}
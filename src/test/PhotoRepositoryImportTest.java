@@ -0,0 +1,261 @@
+import model.ImportPipeline;
+import model.Metrics;
+import model.Photo;
+import model.PhotoPaths;
+import model.PhotoRepository;
+import model.PhotoStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for importing photos into a PhotoRepository, using a temporary project folder
+ */
+public class PhotoRepositoryImportTest {
+
+    Path directory;
+    Path sources;
+    PhotoRepository repository;
+    List<Path> duplicates;
+    List<Path> failed;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        directory = Files.createTempDirectory("import test");
+        Files.createDirectories(directory.resolve("photos"));
+        sources = Files.createDirectories(directory.resolve("sources"));
+        Photo.setPaths(new PhotoPaths(directory, false));
+        repository = new PhotoRepository(new TemporaryStorage(directory));
+        repository.open();
+        duplicates = Collections.synchronizedList(new ArrayList<>());
+        failed = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @AfterEach
+    void runAfter() throws IOException, InterruptedException {
+        repository.close();
+        Photo.setPaths(PhotoPaths.detect(Paths.get(System.getProperty("user.dir"))));
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void testImportFolder() throws Exception {
+        Path nested = Files.createDirectories(sources.resolve("holiday").resolve("day 1"));
+        writeImage(sources.resolve("doggo.jpg"), Color.RED);
+        writeImage(nested.resolve("beach.jpeg"), Color.YELLOW);
+        Files.write(nested.resolve("notes.txt"), new byte[]{1});
+        List<Photo> imported = Collections.synchronizedList(new ArrayList<>());
+        repository.addListener(new PhotoRepository.Listener() {
+            @Override
+            public void photosAdded(List<Photo> added) {
+                imported.addAll(added);
+            }
+
+            @Override
+            public void photoRemoved(Photo removed) {
+            }
+
+            @Override
+            public void thumbnailLoaded(Photo photo) {
+            }
+        });
+
+        importAndWait(Collections.singletonList(sources));
+        assertEquals(2, repository.size());
+        assertEquals(2, imported.size());
+        for (String name : new String[]{"doggo", "beach"}) {
+            Photo photo = repository.get(name);
+            assertTrue(imported.contains(photo));
+            assertTrue(Files.exists(directory.resolve("photos").resolve(name + ".jpg")));
+            assertTrue(photo.hasStoredThumbnail());
+            assertEquals(300, photo.getWidth());
+            assertNotNull(photo.getContentHash());
+        }
+        // only the copies are left in the photos folder, no temporary files
+        try (Stream<Path> files = Files.list(directory.resolve("photos"))) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void testImportSkipsSameContent() throws Exception {
+        Path doggo = writeImage(sources.resolve("doggo.jpg"), Color.RED);
+        importAndWait(Collections.singletonList(doggo));
+        Photo imported = repository.get("doggo");
+        assertNotNull(imported);
+
+        Path copy = Files.copy(doggo, sources.resolve("good boi.jpg"));
+        importAndWait(Collections.singletonList(copy));
+        assertEquals(Collections.singletonList(copy), duplicates);
+        assertEquals(1, repository.size());
+        assertNull(repository.get("good boi"));
+        assertFalse(Files.exists(directory.resolve("photos").resolve("good boi.jpg")));
+        assertSame(imported, repository.get("doggo"));
+    }
+
+    @Test
+    void testImportKeepsPhotoWithSameName() throws Exception {
+        Path doggo = writeImage(sources.resolve("doggo.jpg"), Color.RED);
+        importAndWait(Collections.singletonList(doggo));
+        byte[] original = Files.readAllBytes(directory.resolve("photos").resolve("doggo.jpg"));
+
+        Path other = Files.createDirectories(sources.resolve("other"));
+        Path otherDoggo = writeImage(other.resolve("doggo.jpg"), Color.BLUE);
+        importAndWait(Collections.singletonList(otherDoggo));
+        assertTrue(duplicates.isEmpty());
+        assertEquals(2, repository.size());
+        assertNotNull(repository.get("doggo (2)"));
+        assertArrayEquals(original, Files.readAllBytes(directory.resolve("photos").resolve("doggo.jpg")));
+        assertArrayEquals(Files.readAllBytes(otherDoggo),
+                Files.readAllBytes(directory.resolve("photos").resolve("doggo (2).jpg")));
+        assertNotEquals(repository.get("doggo").getContentHash(), repository.get("doggo (2)").getContentHash());
+    }
+
+    @Test
+    void testImportWhileWatchingCreatesThumbnailsOnce() throws Exception {
+        repository.startWatching();
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            files.add(writeImage(sources.resolve("doggo " + i + ".jpg"), new Color(80 * i, 0, 0)));
+        }
+        long created = Metrics.CREATE_THUMBNAIL.getCount();
+        importAndWait(files);
+        assertEquals(3, repository.size());
+
+        // the watcher reports the imported files before this one, so once it is added they were synced
+        writeImage(directory.resolve("photos").resolve("marker.jpg"), Color.BLUE);
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((repository.get("marker") == null || !repository.get("marker").hasStoredThumbnail())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(repository.get("marker").hasStoredThumbnail());
+        while (Metrics.getGaugeValue("refresh.pending") > 0) {
+            Thread.sleep(10);
+        }
+        // one thumbnail for every import and one for the marker, which the import did not create
+        assertEquals(created + 4, Metrics.CREATE_THUMBNAIL.getCount());
+    }
+
+    /**
+     * Helper method which imports files and waits until every one of them finished importing
+     */
+    void importAndWait(List<Path> files) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        repository.importFiles(files, new ImportPipeline.Listener() {
+            @Override
+            public void photosImported(List<Photo> photos) {
+            }
+
+            @Override
+            public void progress(int completed, int total) {
+                if (completed == total) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void duplicateSkipped(Path source, Photo existing) {
+                duplicates.add(source);
+            }
+
+            @Override
+            public void importFailed(Path source, IOException reason) {
+                failed.add(source);
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(failed.isEmpty());
+    }
+
+    /**
+     * Helper method which writes a jpeg image filled with one colour
+     */
+    static Path writeImage(Path file, Color colour) throws IOException {
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(colour);
+        graphics.fillRect(0, 0, 300, 200);
+        graphics.dispose();
+        ImageIO.write(image, "jpg", file.toFile());
+        return file;
+    }
+
+    /**
+     * Storage of the photos in the temporary folder, with the metadata in memory. Like the folder
+     * storage it only knows the thumbnails which were there when the photos were listed.
+     */
+    static class TemporaryStorage implements PhotoStorage {
+        final PhotoPaths paths;
+        final Map<String, Photo> metadata = Collections.synchronizedMap(new HashMap<>());
+
+        TemporaryStorage(Path directory) {
+            paths = new PhotoPaths(directory, false);
+        }
+
+        @Override
+        public PhotoPaths getPaths() {
+            return paths;
+        }
+
+        @Override
+        public List<String> listPhotoNames() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean hasThumbnail(String name) {
+            return false;
+        }
+
+        @Override
+        public boolean delete(Photo photo) {
+            return photo.getImageFile().toFile().delete();
+        }
+
+        @Override
+        public Map<String, Photo> loadMetadata() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void storeMetadata(List<Photo> photos) {
+            for (Photo photo : photos) {
+                metadata.put(photo.getName(), photo);
+            }
+        }
+
+        @Override
+        public void removeMetadata(String name) {
+            metadata.remove(name);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
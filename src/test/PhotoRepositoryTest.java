@@ -0,0 +1,281 @@
+import model.Photo;
+import model.PhotoPaths;
+import model.PhotoRepository;
+import model.PhotoStorage;
+import model.SortedPhotoIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the PhotoRepository class, using a storage which only exists in memory
+ */
+public class PhotoRepositoryTest {
+
+    MemoryStorage storage;
+    PhotoRepository repository;
+    List<Photo> added;
+    List<Photo> removed;
+
+    @BeforeEach
+    void runBefore() {
+        storage = new MemoryStorage();
+        storage.names.addAll(Arrays.asList("no such doggo", "no such cat"));
+        repository = new PhotoRepository(storage);
+        added = Collections.synchronizedList(new ArrayList<>());
+        removed = Collections.synchronizedList(new ArrayList<>());
+        repository.addListener(new PhotoRepository.Listener() {
+            @Override
+            public void photosAdded(List<Photo> photos) {
+                added.addAll(photos);
+            }
+
+            @Override
+            public void photoRemoved(Photo photo) {
+                removed.add(photo);
+            }
+
+            @Override
+            public void thumbnailLoaded(Photo photo) {
+            }
+        });
+    }
+
+    @AfterEach
+    void runAfter() throws InterruptedException {
+        repository.close();
+    }
+
+    @Test
+    void testOpen() {
+        assertEquals(2, repository.open());
+        assertEquals(2, added.size());
+        assertEquals("no such doggo", repository.list().get(0).getName());
+        assertEquals("no such cat", repository.list().get(1).getName());
+        assertSame(added.get(0), repository.get("no such doggo"));
+        assertSame(added.get(1), repository.get(added.get(1).getId()));
+        assertNull(repository.get("no such bird"));
+        assertNull(repository.get(-1));
+    }
+
+    @Test
+    void testOpenKeepsStoredMetadata() {
+        Date added = new Date(1000);
+        Photo stored = new Photo("no such doggo", added);
+        storage.metadata.put(stored.getName(), stored);
+        storage.metadata.put("deleted", new Photo("deleted"));
+
+        repository.open();
+        assertSame(stored, repository.get("no such doggo"));
+        assertEquals(added, repository.get("no such doggo").getDateAdded());
+        assertFalse(storage.metadata.containsKey("deleted"));
+    }
+
+    @Test
+    void testTagAll() {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        Photo cat = repository.get("no such cat");
+        repository.tagAll(Arrays.asList(doggo, cat, new Photo("not in the repository")), " pet ");
+        assertEquals(2, repository.query("pet").size());
+        assertSame(cat, storage.metadata.get(cat.getName()));
+        assertFalse(storage.metadata.containsKey("not in the repository"));
+
+        repository.untagAll(Collections.singletonList(cat), "Pet");
+        assertEquals(Collections.singletonList(doggo), repository.query("pet"));
+        assertTrue(cat.getTags().isEmpty());
+    }
+
+    @Test
+    void testSetDescriptionAndSearch() {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        assertEquals(Collections.singletonList(doggo), repository.search("dog"));
+
+        repository.setDescription(doggo, "Asleep on the sofa");
+        assertEquals(Collections.singletonList(doggo), repository.search("sofa"));
+        assertSame(doggo, storage.metadata.get(doggo.getName()));
+
+        repository.remove(doggo);
+        assertTrue(repository.search("sofa").isEmpty());
+        assertEquals(1, repository.search("").size());
+    }
+
+    @Test
+    void testSetTagsAndQuery() {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        repository.setTags(doggo, Arrays.asList("Dog", " outdoors ", "", "dog"));
+        assertEquals(2, doggo.getTags().size());
+        assertSame(doggo, storage.metadata.get(doggo.getName()));
+
+        assertEquals(Collections.singletonList(doggo), repository.query("dog"));
+        assertTrue(repository.query("-out").contains(repository.get("no such cat")));
+        assertEquals(2, repository.query(" ").size());
+
+        repository.setTags(doggo, Collections.singletonList("Outdoors"));
+        assertEquals(1, doggo.getTags().size());
+        assertTrue(repository.query("dog").isEmpty());
+        // a deleted photo is not put back into the index or the storage
+        repository.remove(doggo);
+        repository.setTags(doggo, Collections.singletonList("Dog"));
+        assertTrue(repository.query("dog").isEmpty());
+        assertEquals(Collections.singletonList(repository.get("no such cat")), repository.query(" "));
+        assertFalse(storage.metadata.containsKey(doggo.getName()));
+    }
+
+    @Test
+    void testRemove() {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        storage.metadata.put(doggo.getName(), doggo);
+        assertTrue(repository.remove(doggo));
+        assertEquals(Collections.singletonList(doggo), removed);
+        assertNull(repository.get("no such doggo"));
+        assertNull(repository.get(doggo.getId()));
+        assertFalse(repository.contains(doggo));
+        assertEquals(1, repository.size());
+        assertFalse(storage.names.contains("no such doggo"));
+        assertFalse(storage.metadata.containsKey("no such doggo"));
+
+        // a photo which is not in the repository is left alone
+        assertFalse(repository.remove(doggo));
+        assertFalse(repository.remove(new Photo("no such cat")));
+        assertEquals(1, removed.size());
+    }
+
+    @Test
+    void testRemoveSeenByWatcher() {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        storage.onDelete = photo -> repository.sync(Collections.emptyList(),
+                Collections.singletonList(photo.getName()));
+        assertTrue(repository.remove(doggo));
+        assertEquals(Collections.singletonList(doggo), removed);
+        assertFalse(repository.contains(doggo));
+        assertEquals(1, repository.size());
+    }
+
+    @Test
+    void testRemoveLater() throws Exception {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        assertTrue(repository.removeLater(doggo).get(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(doggo), removed);
+        assertFalse(repository.removeLater(doggo).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testLoadPreviewOfMissingFile() throws Exception {
+        repository.open();
+        assertNull(repository.loadPreview(repository.get("no such cat"), 100, 100).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testListSorted() {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        Photo cat = repository.get("no such cat");
+        SortedPhotoIndex.Page page = repository.listSorted(
+                SortedPhotoIndex.Cursor.first(SortedPhotoIndex.Order.NAME, false), 1);
+        assertEquals(Collections.singletonList(cat), page.getPhotos());
+        page = repository.listSorted(page.getNext(), 1);
+        assertEquals(Collections.singletonList(doggo), page.getPhotos());
+        assertNull(page.getNext());
+
+        repository.remove(cat);
+        assertEquals(Collections.singletonList(doggo), repository.listSorted(
+                SortedPhotoIndex.Cursor.first(SortedPhotoIndex.Order.NAME, false), 10).getPhotos());
+    }
+
+    @Test
+    void testSync() {
+        repository.open();
+        Photo doggo = repository.get("no such doggo");
+        storage.metadata.put(doggo.getName(), doggo);
+        added.clear();
+
+        repository.sync(Arrays.asList("no such bird", "no such cat"), Arrays.asList("no such doggo", "never seen"));
+        assertEquals(1, added.size());
+        assertEquals("no such bird", added.get(0).getName());
+        assertSame(added.get(0), repository.get("no such bird"));
+        assertEquals(Collections.singletonList(doggo), removed);
+        assertNull(repository.get("no such doggo"));
+        assertFalse(storage.metadata.containsKey("no such doggo"));
+        assertEquals(2, repository.size());
+
+        // the storage already lost the photo, it is not asked to delete it again
+        assertTrue(storage.names.contains("no such doggo"));
+    }
+
+    /**
+     * Storage which keeps the names and metadata of photos in memory, without any image files
+     */
+    private static class MemoryStorage implements PhotoStorage {
+        final List<String> names = Collections.synchronizedList(new ArrayList<>());
+        final Map<String, Photo> metadata = Collections.synchronizedMap(new HashMap<>());
+        final Set<String> thumbnails = new HashSet<>();
+        // called after a photo was deleted, like the folder watcher noticing the deleted file
+        Consumer<Photo> onDelete;
+
+        @Override
+        public PhotoPaths getPaths() {
+            return new PhotoPaths(Paths.get("no such folder"), false);
+        }
+
+        @Override
+        public List<String> listPhotoNames() {
+            return new ArrayList<>(names);
+        }
+
+        @Override
+        public boolean hasThumbnail(String name) {
+            return thumbnails.contains(name);
+        }
+
+        @Override
+        public boolean delete(Photo photo) {
+            boolean deleted = names.remove(photo.getName());
+            if (deleted && onDelete != null) {
+                onDelete.accept(photo);
+            }
+            return deleted;
+        }
+
+        @Override
+        public Map<String, Photo> loadMetadata() {
+            return new HashMap<>(metadata);
+        }
+
+        @Override
+        public void storeMetadata(List<Photo> photos) {
+            for (Photo photo : photos) {
+                metadata.put(photo.getName(), photo);
+            }
+        }
+
+        @Override
+        public void removeMetadata(String name) {
+            metadata.remove(name);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,331 @@
+import model.Metrics;
+import model.Photo;
+import model.PhotoPaths;
+import model.PhotoRepository;
+import model.PhotoServer;
+import model.PhotoStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the PhotoServer class, serving a copy of the doggo photo from a temporary folder
+ */
+public class PhotoServerTest {
+
+    Path directory;
+    PhotoRepository repository;
+    PhotoServer server;
+    Socket socket;
+    byte[] doggo;
+
+    @BeforeEach
+    void runBefore() throws IOException, InterruptedException {
+        directory = Files.createTempDirectory("server test");
+        Files.createDirectories(directory.resolve("photos"));
+        Path doggoFile = directory.resolve("photos").resolve("doggo.jpg");
+        Files.copy(Paths.get("photos", "doggo.jpg"), doggoFile);
+        doggo = Files.readAllBytes(doggoFile);
+        Photo.setPaths(new PhotoPaths(directory, false));
+
+        repository = new PhotoRepository(new TemporaryStorage(directory));
+        repository.open();
+        // waits for the thumbnails, so they are not rewritten while they are served
+        while (Metrics.getGaugeValue("refresh.pending") > 0) {
+            Thread.sleep(10);
+        }
+        server = new PhotoServer(repository, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    @AfterEach
+    void runAfter() throws IOException, InterruptedException {
+        socket.close();
+        server.close();
+        repository.close();
+        Photo.setPaths(PhotoPaths.detect(Paths.get(System.getProperty("user.dir"))));
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void testServeImage() throws IOException {
+        Response response = request("GET /photos/doggo.jpg");
+        assertEquals(200, response.status);
+        assertEquals("image/jpeg", response.headers.get("content-type"));
+        assertEquals("bytes", response.headers.get("accept-ranges"));
+        assertNotNull(response.headers.get("etag"));
+        assertNotNull(response.headers.get("last-modified"));
+        assertArrayEquals(doggo, response.body);
+
+        // the connection is kept alive
+        assertEquals(200, request("HEAD /photos/doggo").status);
+        assertEquals(404, request("GET /photos/no%20such%20doggo.jpg").status);
+        assertEquals(404, request("GET /elsewhere").status);
+    }
+
+    @Test
+    void testRanges() throws IOException {
+        Response response = request("GET /photos/doggo.jpg", "Range: bytes=10-19");
+        assertEquals(206, response.status);
+        assertEquals("bytes 10-19/" + doggo.length, response.headers.get("content-range"));
+        assertArrayEquals(Arrays.copyOfRange(doggo, 10, 20), response.body);
+
+        response = request("GET /photos/doggo.jpg", "Range: bytes=-5");
+        assertEquals(206, response.status);
+        assertArrayEquals(Arrays.copyOfRange(doggo, doggo.length - 5, doggo.length), response.body);
+
+        response = request("GET /photos/doggo.jpg", "Range: bytes=" + (doggo.length - 3) + "-");
+        assertArrayEquals(Arrays.copyOfRange(doggo, doggo.length - 3, doggo.length), response.body);
+
+        response = request("GET /photos/doggo.jpg", "Range: bytes=" + doggo.length + "-");
+        assertEquals(416, response.status);
+        assertEquals("bytes */" + doggo.length, response.headers.get("content-range"));
+
+        // several ranges, and ranges of an older version of the file, get the whole file
+        assertEquals(200, request("GET /photos/doggo.jpg", "Range: bytes=0-1,5-6").status);
+        assertEquals(200, request("GET /photos/doggo.jpg", "Range: bytes=0-1", "If-Range: \"old\"").status);
+    }
+
+    @Test
+    void testConditionalRequests() throws IOException {
+        Response response = request("GET /photos/doggo.jpg");
+        String etag = response.headers.get("etag");
+        String lastModified = response.headers.get("last-modified");
+
+        response = request("GET /photos/doggo.jpg", "If-None-Match: " + etag);
+        assertEquals(304, response.status);
+        assertEquals(etag, response.headers.get("etag"));
+        assertEquals(0, response.body.length);
+        assertEquals(304, request("GET /photos/doggo.jpg", "If-Modified-Since: " + lastModified).status);
+        assertEquals(200, request("GET /photos/doggo.jpg", "If-None-Match: \"old\"").status);
+        assertEquals(200, request("GET /photos/doggo.jpg", "If-Modified-Since: Thu, 01 Jan 1970 00:00:00 GMT").status);
+    }
+
+    @Test
+    void testServeThumbnail() throws IOException {
+        Response response = request("GET /thumbnails/doggo.jpg");
+        assertEquals(200, response.status);
+        assertArrayEquals(Files.readAllBytes(directory.resolve("thumbnails").resolve("doggo.jpg")), response.body);
+
+        int largest = Photo.getThumbnailSizes()[Photo.getThumbnailSizes().length - 1];
+        response = request("GET /thumbnails/doggo.jpg?size=" + largest);
+        assertEquals(200, response.status);
+        assertArrayEquals(Files.readAllBytes(directory.resolve("thumbnails").resolve(Integer.toString(largest))
+                .resolve("doggo.jpg")), response.body);
+        assertEquals(404, request("GET /thumbnails/doggo.jpg?size=1").status);
+    }
+
+    @Test
+    void testList() throws IOException {
+        Response response = request("GET /photos?order=name&limit=10");
+        assertEquals(200, response.status);
+        String json = new String(response.body, StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("[{\"id\":"));
+        assertTrue(json.contains("\"name\":\"doggo\""));
+        assertTrue(json.contains("\"fileSize\":" + doggo.length));
+
+        assertEquals("[]\n", new String(request("GET /photos?limit=0").body, StandardCharsets.UTF_8));
+        assertEquals(400, request("GET /photos?order=colour").status);
+    }
+
+    @Test
+    void testOtherMethods() throws IOException {
+        Response response = request("DELETE /photos/doggo.jpg");
+        assertEquals(405, response.status);
+        assertEquals("close", response.headers.get("connection"));
+        assertTrue(Files.exists(directory.resolve("photos").resolve("doggo.jpg")));
+    }
+
+    @Test
+    void testIdleConnectionIsClosed() throws IOException {
+        try (PhotoServer limited = new PhotoServer(repository,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 200);
+             Socket idle = new Socket(InetAddress.getLoopbackAddress(), limited.getPort())) {
+            idle.setSoTimeout(10 * 1000);
+            // half a request head does not keep the connection open either
+            idle.getOutputStream().write("GET /photos".getBytes(StandardCharsets.ISO_8859_1));
+            assertEquals(-1, idle.getInputStream().read());
+        }
+    }
+
+    @Test
+    void testStalledReaderIsClosed() throws IOException, InterruptedException {
+        // far more than the socket buffers on both sides hold
+        int length = doggo.length + 64 * 1024 * 1024;
+        Files.write(directory.resolve("photos").resolve("doggo.jpg"), new byte[length - doggo.length],
+                StandardOpenOption.APPEND);
+        try (PhotoServer limited = new PhotoServer(repository,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 200);
+             Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), limited.getPort()));
+            stalled.setSoTimeout(10 * 1000);
+            stalled.getOutputStream().write("GET /photos/doggo.jpg HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            Thread.sleep(1000);
+
+            // what was sent before the connection was closed is still delivered
+            long received = 0;
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                for (int read; (read = stalled.getInputStream().read(buffer)) >= 0; ) {
+                    received += read;
+                }
+            } catch (SocketException e) {
+                // reset by the server, which is just as closed
+            }
+            assertTrue(received < length);
+        }
+    }
+
+    @Test
+    void testConnectionLimit() throws IOException {
+        Socket kept = socket;
+        try (PhotoServer limited = new PhotoServer(repository,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 10 * 1000);
+             Socket first = new Socket(InetAddress.getLoopbackAddress(), limited.getPort())) {
+            // once a response came back the first connection is being served
+            socket = first;
+            assertEquals(200, request("HEAD /photos/doggo.jpg").status);
+            try (Socket second = new Socket(InetAddress.getLoopbackAddress(), limited.getPort())) {
+                second.setSoTimeout(10 * 1000);
+                assertEquals("HTTP/1.1 503 Service Unavailable", readLine(second.getInputStream()));
+            }
+            assertEquals(200, request("GET /photos/doggo.jpg").status);
+        } finally {
+            socket = kept;
+        }
+    }
+
+    /**
+     * Sends a request on the open connection and reads the response
+     */
+    Response request(String requestLine, String... headers) throws IOException {
+        StringBuilder request = new StringBuilder(requestLine).append(" HTTP/1.1\r\nHost: localhost\r\n");
+        for (String header : headers) {
+            request.append(header).append("\r\n");
+        }
+        OutputStream out = socket.getOutputStream();
+        out.write(request.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        Response response = new Response();
+        String statusLine = readLine(in);
+        response.status = Integer.parseInt(statusLine.split(" ")[1]);
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            int colon = line.indexOf(':');
+            response.headers.put(line.substring(0, colon).toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+        int length = requestLine.startsWith("HEAD") || response.status == 304 ? 0
+                : Integer.parseInt(response.headers.getOrDefault("content-length", "0"));
+        response.body = new byte[length];
+        for (int read = 0; read < length; ) {
+            int count = in.read(response.body, read, length - read);
+            assertTrue(count > 0);
+            read += count;
+        }
+        return response;
+    }
+
+    /**
+     * Reads a line of a response head without its line break
+     */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            assertTrue(c >= 0);
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString(StandardCharsets.ISO_8859_1.name());
+    }
+
+    /**
+     * A response read from the server
+     */
+    static class Response {
+        int status;
+        Map<String, String> headers = new HashMap<>();
+        byte[] body;
+    }
+
+    /**
+     * Storage which lists the photos in a folder and keeps their metadata in memory
+     */
+    static class TemporaryStorage implements PhotoStorage {
+        final PhotoPaths paths;
+
+        TemporaryStorage(Path directory) {
+            paths = new PhotoPaths(directory, false);
+        }
+
+        @Override
+        public PhotoPaths getPaths() {
+            return paths;
+        }
+
+        @Override
+        public List<String> listPhotoNames() {
+            return new ArrayList<>(Collections.singletonList("doggo"));
+        }
+
+        @Override
+        public boolean hasThumbnail(String name) {
+            return false;
+        }
+
+        @Override
+        public boolean delete(Photo photo) {
+            return false;
+        }
+
+        @Override
+        public Map<String, Photo> loadMetadata() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void storeMetadata(List<Photo> photos) {
+        }
+
+        @Override
+        public void removeMetadata(String name) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
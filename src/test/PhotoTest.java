@@ -1,9 +1,17 @@
+import model.Metrics;
 import model.Photo;
 import model.Tag;
+import model.ThumbnailPack;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.Set;
 
@@ -31,6 +39,17 @@ public class PhotoTest {
         assertEquals(doggo.getName(), "doggo");
     }
 
+    @Test
+    void testId() {
+        Photo sameName = new Photo("doggo");
+        assertNotEquals(doggo.getId(), sameName.getId());
+
+        Photo catalogued = new Photo(doggo.getId() + 100, "catalogued", addedDate);
+        assertEquals(catalogued.getId(), doggo.getId() + 100);
+        // ids of photos created later never clash with the ids of catalogued photos
+        assertTrue(new Photo("new").getId() > catalogued.getId());
+    }
+
     @Test
     void testSetAndGetDescription() {
         assertNull(doggo.getDescription());
@@ -61,14 +80,110 @@ public class PhotoTest {
     @Test
     void testLoadNonExistentImageAndThumbnail() {
         Photo asdf = new Photo("asdf");
+        long decodeFailures = Metrics.DECODE.getFailures();
+        long thumbnailFailures = Metrics.CREATE_THUMBNAIL.getFailures();
         asdf.loadImage();
-        asdf.loadThumbnail();
+        assertFalse(asdf.loadThumbnail());
+        assertFalse(asdf.createThumbnail());
+
+        // the failures are counted, a missing stored thumbnail is not a failure
+        assertTrue(Metrics.DECODE.getFailures() >= decodeFailures + 2);
+        assertTrue(Metrics.CREATE_THUMBNAIL.getFailures() > thumbnailFailures);
 
         // check no thumbnail has been generated
         File thumbnail = new File(userDir + fileSep + "thumbnails" + fileSep + asdf.getName() + ".jpg");
         assertFalse(thumbnail.exists());
     }
 
+    @Test
+    void testThumbnailPyramid() throws IOException {
+        String thumbnails = userDir + fileSep + "thumbnails" + fileSep;
+        File photoFile = new File(userDir + fileSep + "photos" + fileSep + "pyramid test.jpg");
+        ImageIO.write(new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB), "jpg", photoFile);
+        Photo pyramid = new Photo("pyramid test");
+        try {
+            assertArrayEquals(Photo.getThumbnailSizes(), new int[]{64, 256, 1024});
+            assertTrue(pyramid.createThumbnail());
+            assertEquals(ImageIO.read(new File(thumbnails + "pyramid test.jpg")).getWidth(), 64);
+            assertEquals(ImageIO.read(new File(thumbnails + "256" + fileSep + "pyramid test.jpg")).getWidth(), 256);
+            assertEquals(ImageIO.read(new File(thumbnails + "1024" + fileSep + "pyramid test.jpg")).getWidth(), 1024);
+
+            // the preview is scaled down from the 256 level
+            pyramid.readFileInfo();
+            Image preview = pyramid.getPreview(200, 200);
+            assertEquals(preview.getWidth(null), 200);
+            assertEquals(preview.getHeight(null), 150);
+        } finally {
+            pyramid.unloadImage();
+            pyramid.deleteThumbnail();
+            photoFile.delete();
+        }
+        assertFalse(new File(thumbnails + "256" + fileSep + "pyramid test.jpg").exists());
+        assertFalse(new File(thumbnails + "1024" + fileSep + "pyramid test.jpg").exists());
+    }
+
+    @Test
+    void testThumbnailFromEmbeddedThumbnail() throws IOException {
+        String thumbnails = userDir + fileSep + "thumbnails" + fileSep;
+        File photoFile = new File(userDir + fileSep + "photos" + fileSep + "embedded test.jpg");
+        byte[] jpeg = ExifThumbnailReaderTest.jpegBytes(new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB));
+        byte[] thumbnail = ExifThumbnailReaderTest.jpegBytes(new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB));
+        Files.write(photoFile.toPath(), ExifThumbnailReaderTest.withExifThumbnail(jpeg, thumbnail));
+        File stale = new File(thumbnails + "1024" + fileSep + "embedded test.jpg");
+        stale.getParentFile().mkdirs();
+        ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "jpg", stale);
+        Photo embedded = new Photo("embedded test");
+        try {
+            // only the grid thumbnail fits into the embedded one, the photo itself is not decoded
+            long decodes = Metrics.DECODE.getCount();
+            assertTrue(embedded.createThumbnail());
+            assertEquals(decodes, Metrics.DECODE.getCount());
+            assertEquals(ImageIO.read(new File(thumbnails + "embedded test.jpg")).getWidth(), 64);
+            assertFalse(new File(thumbnails + "256" + fileSep + "embedded test.jpg").exists());
+            assertFalse(stale.exists());
+
+            // the larger levels are created when they are first needed
+            embedded.readFileInfo();
+            assertEquals(embedded.getPreview(200, 200).getWidth(null), 200);
+            assertEquals(decodes + 1, Metrics.DECODE.getCount());
+            assertEquals(ImageIO.read(new File(thumbnails + "256" + fileSep + "embedded test.jpg")).getWidth(), 256);
+            assertTrue(embedded.ensureThumbnailLevel(1024));
+            assertEquals(ImageIO.read(stale).getWidth(), 1024);
+            assertEquals(decodes + 1, Metrics.DECODE.getCount());
+        } finally {
+            embedded.unloadImage();
+            embedded.deleteThumbnail();
+            photoFile.delete();
+        }
+    }
+
+    @Test
+    void testThumbnailPackHoldsOnlyGridThumbnails() throws IOException {
+        String thumbnails = userDir + fileSep + "thumbnails" + fileSep;
+        File photoFile = new File(userDir + fileSep + "photos" + fileSep + "pack test.jpg");
+        ImageIO.write(new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB), "jpg", photoFile);
+        Path packFile = Files.createTempFile("thumbnails", ".pack");
+        Files.delete(packFile);
+        ThumbnailPack pack = new ThumbnailPack(packFile);
+        Photo.setThumbnailPack(pack);
+        Photo packed = new Photo("pack test");
+        try {
+            assertTrue(packed.createThumbnail());
+            assertTrue(pack.contains("pack test"));
+            assertEquals(pack.size(), 1);
+            assertFalse(new File(thumbnails + "pack test.jpg").exists());
+            assertEquals(ImageIO.read(new File(thumbnails + "256" + fileSep + "pack test.jpg")).getWidth(), 256);
+            assertEquals(ImageIO.read(new File(thumbnails + "1024" + fileSep + "pack test.jpg")).getWidth(), 1024);
+        } finally {
+            packed.deleteThumbnail();
+            Photo.setThumbnailPack(null);
+            pack.close();
+            Files.deleteIfExists(packFile);
+            photoFile.delete();
+        }
+        assertFalse(new File(thumbnails + "1024" + fileSep + "pack test.jpg").exists());
+    }
+
     @Test
     void testAddOneTag() {
         Tag tag = new Tag("Dog");
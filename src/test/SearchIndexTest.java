@@ -0,0 +1,106 @@
+import model.Photo;
+import model.SearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SearchIndex class
+ */
+public class SearchIndexTest {
+
+    SearchIndex index;
+    Photo doggo;
+    Photo goodBoi;
+    Photo woof;
+
+    @BeforeEach
+    void runBefore() {
+        index = new SearchIndex();
+        doggo = new Photo("doggo");
+        goodBoi = new Photo("good boi");
+        woof = new Photo("woof_irl");
+        woof.setDescription("A dog on the Beach");
+        index.add(doggo);
+        index.add(goodBoi);
+        index.add(woof);
+    }
+
+    @Test
+    void testSubstringsOfWords() {
+        assertEquals(Collections.singletonList(doggo), index.search("ogg"));
+        assertEquals(Arrays.asList(doggo, woof), index.search("DOG"));
+        assertEquals(Collections.singletonList(woof), index.search("each"));
+        assertEquals(Collections.singletonList(woof), index.search("irl"));
+        assertTrue(index.search("cat").isEmpty());
+    }
+
+    @Test
+    void testShortWordsArePrefixes() {
+        assertEquals(Arrays.asList(doggo, woof), index.search("d"));
+        assertEquals(Collections.singletonList(goodBoi), index.search("g"));
+        assertEquals(Collections.singletonList(goodBoi), index.search("bo"));
+        // "oi" is only at the end of a word
+        assertTrue(index.search("oi").isEmpty());
+    }
+
+    @Test
+    void testEveryWordMustMatch() {
+        assertEquals(Collections.singletonList(woof), index.search("dog beach"));
+        assertEquals(Collections.singletonList(goodBoi), index.search("boi go"));
+        assertTrue(index.search("doggo beach").isEmpty());
+        assertEquals(3, index.search("  ").size());
+    }
+
+    @Test
+    void testCandidatesAreChecked() {
+        // has the trigrams "abc" and "bcd" of "abcd", but not the word
+        Photo photo = new Photo("abcx bcdy");
+        index.add(photo);
+        assertTrue(index.search("abcd").isEmpty());
+        assertEquals(Collections.singletonList(photo), index.search("bcd"));
+    }
+
+    @Test
+    void testDescriptionChanges() {
+        doggo.setDescription("Sleeping in the sun");
+        index.add(doggo);
+        assertEquals(Collections.singletonList(doggo), index.search("sleep"));
+
+        woof.setDescription(null);
+        index.add(woof);
+        assertTrue(index.search("beach").isEmpty());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void testRemove() {
+        index.remove(doggo);
+        index.remove(doggo);
+        assertEquals(Collections.singletonList(woof), index.search("dog"));
+        assertEquals(2, index.size());
+
+        // the number of the removed photo is reused
+        Photo added = new Photo("hot dog");
+        index.add(added);
+        assertEquals(new HashSet<>(Arrays.asList(woof, added)), new HashSet<>(index.search("dog")));
+    }
+
+    @Test
+    void testManyPhotos() {
+        for (int i = 0; i < 20000; i++) {
+            index.add(new Photo("photo " + i));
+        }
+        List<Photo> found = index.search("photo 19999");
+        assertEquals(1, found.size());
+        assertEquals("photo 19999", found.get(0).getName());
+        // 1234, 11234 and 12340 to 12349
+        assertEquals(12, index.search("1234").size());
+    }
+}
@@ -0,0 +1,137 @@
+import model.PerceptualHash;
+import model.Photo;
+import model.SimilarPhotoIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SimilarPhotoIndex and PerceptualHash classes
+ */
+public class SimilarPhotoIndexTest {
+
+    SimilarPhotoIndex index;
+    Photo doggo;
+    Photo doggoCopy;
+    Photo cat;
+
+    @BeforeEach
+    void runBefore() {
+        index = new SimilarPhotoIndex();
+        doggo = photoWithHash("doggo", 0b1111L);
+        doggoCopy = photoWithHash("doggo (2)", 0b0111L);
+        cat = photoWithHash("Cat", 0xFFFF0000L);
+        index.add(doggo);
+        index.add(doggoCopy);
+        index.add(cat);
+    }
+
+    @Test
+    void testDistance() {
+        assertEquals(PerceptualHash.distance(0b1111L, 0b0111L), 1);
+        assertEquals(PerceptualHash.distance(-1L, 0L), 64);
+    }
+
+    @Test
+    void testDHashOfSimilarImages() {
+        BufferedImage gradient = gradient(64, 48);
+        BufferedImage larger = gradient(640, 480);
+        BufferedImage flipped = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = flipped.createGraphics();
+        graphics.drawImage(gradient, 64, 0, -64, 48, null);
+        graphics.dispose();
+
+        long hash = PerceptualHash.dHash(gradient);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(larger)) <= 4);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(flipped)) > 32);
+    }
+
+    @Test
+    void testSimilarTo() {
+        assertEquals(index.similarTo(doggo, 2), Collections.singletonList(doggoCopy));
+        assertTrue(index.similarTo(cat, 2).isEmpty());
+        assertEquals(index.search(0b1111L, 64).size(), 3);
+    }
+
+    @Test
+    void testSearchIsOrderedByDistance() {
+        List<SimilarPhotoIndex.Match> matches = index.search(0b0011L, 10);
+        assertEquals(matches.size(), 2);
+        assertSame(matches.get(0).getPhoto(), doggoCopy);
+        assertEquals(matches.get(0).getDistance(), 1);
+        assertSame(matches.get(1).getPhoto(), doggo);
+    }
+
+    @Test
+    void testRemove() {
+        index.remove(doggoCopy);
+        assertTrue(index.similarTo(doggo, 2).isEmpty());
+        assertEquals(index.size(), 2);
+
+        index.remove(doggo);
+        index.remove(cat);
+        assertEquals(index.size(), 0);
+        index.add(doggo);
+        assertEquals(index.search(0b1111L, 0).size(), 1);
+    }
+
+    @Test
+    void testPhotoWithoutHashIsIgnored() {
+        index.add(new Photo("woof_irl"));
+        assertEquals(index.size(), 3);
+    }
+
+    @Test
+    void testMatchesLinearScan() {
+        Random random = new Random(42);
+        SimilarPhotoIndex large = new SimilarPhotoIndex();
+        Photo[] photos = new Photo[2000];
+        for (int i = 0; i < photos.length; i++) {
+            photos[i] = photoWithHash("photo" + i, random.nextLong());
+            large.add(photos[i]);
+        }
+        for (int i = 0; i < photos.length; i += 2) {
+            large.remove(photos[i]);
+        }
+
+        long query = random.nextLong();
+        int expected = 0;
+        for (int i = 1; i < photos.length; i += 2) {
+            if (PerceptualHash.distance(query, photos[i].getPerceptualHash()) <= 24) {
+                expected++;
+            }
+        }
+        assertEquals(large.search(query, 24).size(), expected);
+        assertEquals(large.size(), 1000);
+    }
+
+    /**
+     * Creates a photo with a given perceptual hash
+     */
+    private static Photo photoWithHash(String name, long hash) {
+        Photo photo = new Photo(name);
+        photo.setPerceptualHash(hash);
+        return photo;
+    }
+
+    /**
+     * Creates an image which gets brighter from left to right with some stripes
+     */
+    private static BufferedImage gradient(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int grey = (x * 255 / width + (y * 8 / height) * 20) % 256;
+                image.setRGB(x, y, new Color(grey, grey, grey).getRGB());
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,116 @@
+import model.Photo;
+import model.SortedPhotoIndex;
+import model.SortedPhotoIndex.Cursor;
+import model.SortedPhotoIndex.Order;
+import model.SortedPhotoIndex.Page;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SortedPhotoIndex class
+ */
+public class SortedPhotoIndexTest {
+
+    SortedPhotoIndex index;
+    Photo doggo;
+    Photo cat;
+    Photo woof;
+    Photo bird;
+
+    @BeforeEach
+    void runBefore() {
+        index = new SortedPhotoIndex();
+        doggo = photo("doggo", 3000, 300);
+        cat = photo("Cat", 1000, 500);
+        woof = photo("woof", 2000, 100);
+        // added at the same time as woof, so it comes after woof by its id
+        bird = photo("bird", 2000, 200);
+        for (Photo photo : Arrays.asList(doggo, cat, woof, bird)) {
+            index.add(photo);
+        }
+    }
+
+    @Test
+    void testOrders() {
+        assertEquals(Arrays.asList(cat, woof, bird, doggo), all(Cursor.first(Order.DATE_ADDED, false)));
+        assertEquals(Arrays.asList(doggo, bird, woof, cat), all(Cursor.first(Order.DATE_ADDED, true)));
+        assertEquals(Arrays.asList(bird, cat, doggo, woof), all(Cursor.first(Order.NAME, false)));
+        assertEquals(Arrays.asList(cat, doggo, bird, woof), all(Cursor.first(Order.FILE_SIZE, true)));
+        assertEquals(4, index.size());
+
+        List<Photo> sorted = new ArrayList<>(Arrays.asList(doggo, cat, woof, bird));
+        sorted.sort(Order.NAME.comparator());
+        assertEquals(all(Cursor.first(Order.NAME, false)), sorted);
+    }
+
+    @Test
+    void testPages() {
+        Page first = index.page(Cursor.first(Order.DATE_ADDED, true), 3);
+        assertEquals(Arrays.asList(doggo, bird, woof), first.getPhotos());
+        assertNotNull(first.getNext());
+
+        // photos added between two pages show up at their place
+        Photo newest = photo("newest", 4000, 1);
+        Photo older = photo("older", 500, 1);
+        index.add(newest);
+        index.add(older);
+        Page second = index.page(first.getNext(), 3);
+        assertEquals(Arrays.asList(cat, older), second.getPhotos());
+        assertNull(second.getNext());
+
+        assertEquals(Collections.emptyList(), index.page(Cursor.first(Order.NAME, false), 0).getPhotos());
+    }
+
+    @Test
+    void testCursorAt() {
+        assertEquals(Arrays.asList(woof, bird, doggo), all(Cursor.atDate(new Date(2000), false)));
+        assertEquals(Arrays.asList(bird, woof, cat), all(Cursor.atDate(new Date(2000), true)));
+        assertEquals(Arrays.asList(cat), all(Cursor.atDate(new Date(1500), true)));
+        assertEquals(Arrays.asList(doggo, woof), all(Cursor.atName("DOG", false)));
+        assertEquals(Arrays.asList(doggo, cat), all(Cursor.atFileSize(300, false)));
+        assertTrue(all(Cursor.atFileSize(99, true)).isEmpty());
+    }
+
+    @Test
+    void testRemoveAndUpdate() {
+        index.remove(woof);
+        index.remove(new Photo("not indexed"));
+        assertEquals(Arrays.asList(cat, bird, doggo), all(Cursor.first(Order.DATE_ADDED, false)));
+
+        // a photo whose file changed is moved by adding it again
+        doggo.setFileInfo(10, 10, 50, 0, "hash");
+        index.add(doggo);
+        assertEquals(Arrays.asList(doggo, bird, cat), all(Cursor.first(Order.FILE_SIZE, false)));
+        assertEquals(3, index.size());
+    }
+
+    /**
+     * Helper method which creates a photo with a date added and a file size
+     */
+    private static Photo photo(String name, long dateAdded, long fileSize) {
+        Photo photo = new Photo(name, new Date(dateAdded));
+        photo.setFileInfo(10, 10, fileSize, 0, "hash");
+        return photo;
+    }
+
+    /**
+     * Helper method which reads every page from a cursor on, two photos at a time
+     */
+    private List<Photo> all(Cursor cursor) {
+        List<Photo> photos = new ArrayList<>();
+        while (cursor != null) {
+            Page page = index.page(cursor, 2);
+            photos.addAll(page.getPhotos());
+            cursor = page.getNext();
+        }
+        return photos;
+    }
+}
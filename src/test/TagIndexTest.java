@@ -0,0 +1,130 @@
+import model.Photo;
+import model.Tag;
+import model.TagIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the TagIndex class
+ */
+public class TagIndexTest {
+
+    TagIndex index;
+    Photo doggo;
+    Photo cat;
+    Photo woof;
+
+    @BeforeEach
+    void runBefore() {
+        index = new TagIndex();
+        doggo = new Photo("doggo");
+        cat = new Photo("Cat");
+        woof = new Photo("woof_irl");
+        index.addPhoto(doggo);
+        index.addPhoto(cat);
+        index.addPhoto(woof);
+
+        index.tag(doggo, "Dog");
+        index.tag(doggo, "Outdoors");
+        index.tag(cat, "Cat");
+        index.tag(cat, "Outdoors");
+        index.tag(woof, "Dog");
+        index.tag(woof, "Indoors");
+    }
+
+    @Test
+    void testTagIsAddedToPhotoAndTag() {
+        assertTrue(doggo.getTags().contains(new Tag("Dog")));
+        assertEquals(index.count("Dog"), 2);
+        assertEquals(index.count("Bird"), 0);
+    }
+
+    @Test
+    void testTagNamesIgnoreCase() {
+        Tag tag = index.tag(cat, "dog");
+        assertEquals(tag.getName(), "Dog");
+        assertEquals(index.count("DOG"), 3);
+        assertEquals(tag.getPhotos().size(), 3);
+    }
+
+    @Test
+    void testTagAllAndUntagAll() {
+        Photo bird = new Photo("bird");
+        Tag tag = index.tagAll(Arrays.asList(doggo, cat, bird), "pet");
+        assertEquals(tag.getName(), "pet");
+        assertEquals(index.count("Pet"), 3);
+        assertTrue(bird.getTags().contains(tag));
+        assertEquals(index.filter("pet dog"), Collections.singletonList(doggo));
+
+        index.untagAll(Arrays.asList(doggo, bird, new Photo("not indexed")), "PET");
+        assertEquals(index.count("pet"), 1);
+        assertEquals(tag.getPhotos().size(), 1);
+        assertTrue(cat.getTags().contains(tag));
+        assertFalse(doggo.getTags().contains(tag));
+        index.untagAll(Collections.singletonList(cat), "no such tag");
+        assertEquals(index.count("pet"), 1);
+    }
+
+    @Test
+    void testQuery() {
+        assertEquals(index.query(Arrays.asList("Dog", "Outdoors"), Collections.emptyList(), Collections.emptyList()),
+                Collections.singletonList(doggo));
+        assertEquals(index.query(Collections.emptyList(), Arrays.asList("Cat", "Indoors"), Collections.emptyList()),
+                Arrays.asList(cat, woof));
+        assertEquals(index.query(Collections.singletonList("Dog"), Collections.emptyList(),
+                Collections.singletonList("Outdoors")), Collections.singletonList(woof));
+        assertTrue(index.query(Collections.singletonList("Bird"), Collections.emptyList(),
+                Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void testFilter() {
+        assertEquals(index.filter("do"), Arrays.asList(doggo, woof));
+        assertEquals(index.filter("dog out"), Collections.singletonList(doggo));
+        assertEquals(index.filter("-dog"), Collections.singletonList(cat));
+        assertEquals(index.filter(" "), Arrays.asList(doggo, cat, woof));
+    }
+
+    @Test
+    void testTagsWithPrefix() {
+        SortedMap<String, Integer> counts = index.tagsWithPrefix("o");
+        assertEquals(counts.size(), 1);
+        assertEquals(counts.get("Outdoors"), Integer.valueOf(2));
+        assertEquals(index.tagsWithPrefix("").size(), 4);
+    }
+
+    @Test
+    void testUntagAndRemovePhoto() {
+        index.untag(doggo, "dog");
+        assertFalse(doggo.getTags().contains(new Tag("Dog")));
+        assertEquals(index.count("Dog"), 1);
+
+        index.removePhoto(woof);
+        assertEquals(index.count("Dog"), 0);
+        assertEquals(index.filter("in").size(), 0);
+
+        // the number of the removed photo is reused
+        Photo added = new Photo("good boi");
+        index.tag(added, "Dog");
+        List<Photo> dogs = index.filter("dog");
+        assertEquals(dogs, Collections.singletonList(added));
+    }
+
+    @Test
+    void testAddPhotoWithExistingTags() {
+        Photo tagged = new Photo("good boi");
+        Tag separate = new Tag("Dog");
+        tagged.addTag(separate);
+        index.addPhoto(tagged);
+
+        assertEquals(index.count("Dog"), 3);
+        assertTrue(separate.getPhotos().isEmpty());
+    }
+}
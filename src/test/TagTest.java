@@ -3,7 +3,18 @@ import model.Tag;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -70,5 +81,95 @@ public class TagTest {
         assertEquals(photosWithTag.size(), 0);
     }
 
+    @Test
+    void testBulkTagging() {
+        Photo cat = new Photo("cat");
+        Photo bird = new Photo("bird");
+        assertEquals(2, tag.addTagToPhotos(Arrays.asList(photo, cat)));
+        assertEquals(1, tag.addTagToPhotos(Arrays.asList(cat, bird)));
+        assertEquals(3, tag.getPhotos().size());
+        assertTrue(bird.getTags().contains(tag));
+
+        assertEquals(2, tag.removeTagFromPhotos(Arrays.asList(photo, bird)));
+        assertEquals(Collections.singleton(cat), tag.getPhotos());
+        assertTrue(photo.getTags().isEmpty());
+        assertTrue(cat.getTags().contains(tag));
+    }
 
+    @Test
+    void testConcurrentTagging() throws Exception {
+        int threads = 8;
+        // few photos and tags, so the threads keep changing the same associations
+        List<Photo> photos = new ArrayList<>();
+        List<Tag> tags = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            photos.add(new Photo("doggo " + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            tags.add(new Tag("tag " + i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                start.await();
+                for (int i = 0; i < 50000; i++) {
+                    Photo p = photos.get(random.nextInt(photos.size()));
+                    Tag tg = tags.get(random.nextInt(tags.size()));
+                    // every way of changing the association races with every other
+                    switch (random.nextInt(6)) {
+                        case 0:
+                            p.addTag(tg);
+                            break;
+                        case 1:
+                            p.removeTag(tg);
+                            break;
+                        case 2:
+                            tg.addTagToPhoto(p);
+                            break;
+                        case 3:
+                            tg.removeTagFromPhoto(p);
+                            break;
+                        case 4:
+                            tg.addTagToPhotos(photos.subList(0, random.nextInt(photos.size())));
+                            break;
+                        default:
+                            tg.removeTagFromPhotos(photos.subList(random.nextInt(photos.size()), photos.size()));
+                    }
+                }
+                return null;
+            }));
+        }
+        Future<?> reader = executor.submit(() -> {
+            start.await();
+            while (writing.get()) {
+                for (Photo p : photos) {
+                    for (Tag tg : p.getTags()) {
+                        assertNotNull(tg.getName());
+                    }
+                }
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        // a ConcurrentModificationException would have ended the reader with an exception
+        reader.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        for (Photo p : photos) {
+            for (Tag tg : tags) {
+                assertEquals(p.getTags().contains(tg), tg.getPhotos().contains(p), p.getName() + " and " + tg.getName());
+            }
+        }
+    }
 }
@@ -0,0 +1,76 @@
+import model.TaskExecutors;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the TaskExecutors class
+ */
+public class TaskExecutorsTest {
+
+    @Test
+    void testIoExecutorRunsBlockingTasksAtOnce() throws InterruptedException {
+        ExecutorService io = TaskExecutors.newIoExecutor("test-io");
+        int tasks = 100;
+        CountDownLatch started = new CountDownLatch(tasks);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < tasks; i++) {
+            io.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        // every task waits at the same time, none of them waits for a free thread
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        io.shutdown();
+        assertTrue(io.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCpuExecutorWaitsForRoom() throws InterruptedException {
+        ThreadPoolExecutor cpu = TaskExecutors.newCpuExecutor("test-cpu", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        cpu.execute(blocked);
+        cpu.execute(blocked);
+
+        // the thread and the queue are both taken, so the next task waits
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> {
+            cpu.execute(() -> { });
+            submitted.countDown();
+        });
+        submitter.start();
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, cpu.getPoolSize());
+
+        release.countDown();
+        assertTrue(submitted.await(10, TimeUnit.SECONDS));
+        cpu.shutdown();
+        assertTrue(cpu.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCpuExecutorRejectsAfterShutdown() {
+        ThreadPoolExecutor cpu = TaskExecutors.newCpuExecutor("test-cpu", 1, 1);
+        cpu.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> cpu.execute(() -> { }));
+    }
+}
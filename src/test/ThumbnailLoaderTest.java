@@ -0,0 +1,72 @@
+import model.ImageCache;
+import model.Photo;
+import model.ThumbnailLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ThumbnailLoader class
+ */
+public class ThumbnailLoaderTest {
+
+    BlockingQueue<Photo> loaded;
+    ThumbnailLoader loader;
+
+    @BeforeEach
+    void runBefore() {
+        ImageCache.getThumbnails().clear();
+        loaded = new LinkedBlockingQueue<>();
+        loader = new ThumbnailLoader(1, loaded::add);
+    }
+
+    @AfterEach
+    void runAfter() throws InterruptedException {
+        loader.shutdown();
+    }
+
+    @Test
+    void testLoadRequestedThumbnails() throws InterruptedException {
+        Photo doggo = new Photo("doggo");
+        Photo cat = new Photo("Cat");
+        assertNull(doggo.getThumbnail());
+
+        loader.request(Arrays.asList(doggo, cat));
+        Photo first = loaded.poll(10, TimeUnit.SECONDS);
+        Photo second = loaded.poll(10, TimeUnit.SECONDS);
+        assertSame(doggo, first);
+        assertSame(cat, second);
+        assertNotNull(doggo.getThumbnail());
+        assertNotNull(cat.getThumbnail());
+
+        // thumbnails which are already loaded are not requested again
+        loader.request(Collections.singletonList(doggo));
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    void testMissingPhotoIsSkipped() throws InterruptedException {
+        loader.request(Arrays.asList(new Photo("no such doggo"), new Photo("doggo")));
+        assertEquals("doggo", loaded.poll(10, TimeUnit.SECONDS).getName());
+        assertNull(loaded.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testNewRequestCancelsPendingOnes() {
+        Photo[] photos = new Photo[100];
+        for (int i = 0; i < photos.length; i++) {
+            photos[i] = new Photo("no such doggo " + i);
+        }
+        loader.request(Arrays.asList(photos));
+        loader.request(Collections.emptyList());
+        assertEquals(0, loader.getPendingCount());
+    }
+}
@@ -0,0 +1,135 @@
+import model.ThumbnailPack;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ThumbnailPack class
+ */
+public class ThumbnailPackTest {
+
+    Path packFile;
+    ThumbnailPack pack;
+    byte[] jpeg;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        packFile = Files.createTempFile("thumbnails", ".pack");
+        Files.delete(packFile);
+        pack = new ThumbnailPack(packFile);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpg", output);
+        jpeg = output.toByteArray();
+    }
+
+    @AfterEach
+    void runAfter() throws IOException {
+        pack.close();
+        Files.deleteIfExists(packFile);
+    }
+
+    @Test
+    void testPutAndRead() throws IOException {
+        assertFalse(pack.contains("doggo"));
+        assertNull(pack.read("doggo"));
+
+        pack.put("doggo", jpeg);
+        assertTrue(pack.contains("doggo"));
+        assertArrayEquals(pack.readBytes("doggo"), jpeg);
+        BufferedImage thumbnail = pack.read("doggo");
+        assertEquals(thumbnail.getWidth(), 64);
+        assertEquals(thumbnail.getHeight(), 48);
+    }
+
+    @Test
+    void testReopen() throws IOException {
+        pack.put("doggo", jpeg);
+        pack.put("Cat", new byte[] {1, 2, 3});
+        pack.close();
+
+        pack = new ThumbnailPack(packFile);
+        assertEquals(pack.size(), 2);
+        assertArrayEquals(pack.readBytes("doggo"), jpeg);
+        assertArrayEquals(pack.readBytes("Cat"), new byte[] {1, 2, 3});
+    }
+
+    @Test
+    void testReadMappedAndAppended() throws IOException {
+        pack.put("doggo", jpeg);
+        pack.close();
+        pack = new ThumbnailPack(packFile);
+
+        // the doggo is in the mapping, the cats are appended after it
+        for (int i = 0; i < 100; i++) {
+            pack.put("Cat " + i, new byte[] {(byte) i, 2, 3});
+        }
+        assertArrayEquals(pack.readBytes("doggo"), jpeg);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(pack.readBytes("Cat " + i), new byte[] {(byte) i, 2, 3});
+        }
+    }
+
+    @Test
+    void testRemoveLeavesTombstone() throws IOException {
+        pack.put("doggo", jpeg);
+        assertTrue(pack.remove("doggo"));
+        assertFalse(pack.remove("doggo"));
+        assertFalse(pack.contains("doggo"));
+        pack.close();
+
+        pack = new ThumbnailPack(packFile);
+        assertFalse(pack.contains("doggo"));
+        assertEquals(pack.size(), 0);
+    }
+
+    @Test
+    void testReplace() throws IOException {
+        pack.put("doggo", new byte[] {1});
+        pack.put("doggo", new byte[] {2});
+        assertArrayEquals(pack.readBytes("doggo"), new byte[] {2});
+        pack.close();
+
+        pack = new ThumbnailPack(packFile);
+        assertEquals(pack.size(), 1);
+        assertArrayEquals(pack.readBytes("doggo"), new byte[] {2});
+    }
+
+    @Test
+    void testCompact() throws IOException {
+        pack.put("doggo", jpeg);
+        pack.put("Cat", new byte[] {1, 2, 3});
+        pack.remove("doggo");
+        long before = Files.size(packFile);
+
+        pack.compact();
+        assertTrue(Files.size(packFile) < before);
+        assertFalse(pack.contains("doggo"));
+        assertArrayEquals(pack.readBytes("Cat"), new byte[] {1, 2, 3});
+    }
+
+    @Test
+    void testCutOffRecordIsDropped() throws IOException {
+        pack.put("doggo", jpeg);
+        pack.put("Cat", new byte[] {1, 2, 3});
+        pack.close();
+        try (RandomAccessFile file = new RandomAccessFile(packFile.toFile(), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        pack = new ThumbnailPack(packFile);
+        assertEquals(pack.size(), 1);
+        pack.put("Cat", new byte[] {4});
+        assertArrayEquals(pack.readBytes("Cat"), new byte[] {4});
+    }
+}
@@ -0,0 +1,139 @@
+import model.Metrics;
+import model.TiledImage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the TiledImage class, with a 1000 x 600 image whose right half is white
+ */
+public class TiledImageTest {
+
+    File imageFile;
+    BlockingQueue<TiledImage.Tile> loaded;
+    TiledImage image;
+
+    @BeforeEach
+    void runBefore() throws IOException {
+        imageFile = File.createTempFile("tiles", ".jpg");
+        BufferedImage source = new BufferedImage(1000, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = source.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(500, 0, 500, 600);
+        graphics.dispose();
+        ImageIO.write(source, "jpg", imageFile);
+        loaded = new LinkedBlockingQueue<>();
+        image = new TiledImage(imageFile, 1, 64L * 1024 * 1024, loaded::add);
+    }
+
+    @AfterEach
+    void runAfter() {
+        image.close();
+        imageFile.delete();
+    }
+
+    @Test
+    void testLevels() {
+        assertEquals(1000, image.getWidth());
+        assertEquals(600, image.getHeight());
+        // 1000 pixels fit into a tile of 256 every fourth pixel
+        assertEquals(2, image.getMaxLevel());
+        assertEquals(0, image.levelFor(2));
+        assertEquals(0, image.levelFor(0.6));
+        assertEquals(1, image.levelFor(0.5));
+        assertEquals(1, image.levelFor(0.3));
+        assertEquals(2, image.levelFor(0.25));
+        assertEquals(2, image.levelFor(0.01));
+    }
+
+    @Test
+    void testTilesIn() {
+        assertEquals(12, image.tilesIn(0, new Rectangle(-100, -100, 2000, 2000)).size());
+        assertEquals(Arrays.asList(new TiledImage.Tile(1, 0, 0), new TiledImage.Tile(1, 1, 0)),
+                image.tilesIn(1, new Rectangle(500, 100, 100, 100)));
+        assertTrue(image.tilesIn(0, new Rectangle(1000, 0, 100, 100)).isEmpty());
+
+        assertEquals(new Rectangle(768, 512, 232, 88), image.regionOf(new TiledImage.Tile(0, 3, 2)));
+        assertEquals(new Rectangle(0, 0, 1000, 600), image.regionOf(new TiledImage.Tile(2, 0, 0)));
+    }
+
+    @Test
+    void testWantedTiles() {
+        List<TiledImage.Tile> wanted = image.wantedTiles(0, new Rectangle(300, 300, 100, 100));
+        // the whole image first, then the tile on screen, then the ring around it
+        assertEquals(10, wanted.size());
+        assertEquals(new TiledImage.Tile(2, 0, 0), wanted.get(0));
+        assertEquals(new TiledImage.Tile(0, 1, 1), wanted.get(1));
+        assertTrue(wanted.contains(new TiledImage.Tile(0, 0, 0)));
+        assertTrue(wanted.contains(new TiledImage.Tile(0, 2, 2)));
+        assertFalse(wanted.contains(new TiledImage.Tile(0, 3, 1)));
+    }
+
+    @Test
+    void testDecodeTiles() throws InterruptedException {
+        TiledImage.Tile overview = new TiledImage.Tile(2, 0, 0);
+        TiledImage.Tile corner = new TiledImage.Tile(0, 3, 2);
+        assertNull(image.getTile(overview));
+
+        image.request(Arrays.asList(overview, corner));
+        assertEquals(overview, loaded.poll(10, TimeUnit.SECONDS));
+        assertEquals(corner, loaded.poll(10, TimeUnit.SECONDS));
+
+        BufferedImage decoded = image.getTile(overview);
+        assertEquals(250, decoded.getWidth());
+        assertEquals(150, decoded.getHeight());
+        assertTrue(isDark(decoded.getRGB(10, 75)));
+        assertFalse(isDark(decoded.getRGB(240, 75)));
+        decoded = image.getTile(corner);
+        assertEquals(232, decoded.getWidth());
+        assertEquals(88, decoded.getHeight());
+        assertFalse(isDark(decoded.getRGB(100, 40)));
+
+        // tiles which are decoded are not requested again
+        image.request(Collections.singletonList(corner));
+        assertEquals(0, image.getPendingCount());
+    }
+
+    @Test
+    void testRowIsDecodedAsOneStrip() throws InterruptedException {
+        long decodes = Metrics.DECODE_TILE.getCount();
+        List<TiledImage.Tile> row = image.tilesIn(0, new Rectangle(0, 300, 1000, 1));
+        image.request(row);
+        for (int i = 0; i < row.size(); i++) {
+            assertNotNull(loaded.poll(10, TimeUnit.SECONDS));
+        }
+        assertEquals(decodes + 1, Metrics.DECODE_TILE.getCount());
+        assertTrue(isDark(image.getTile(row.get(1)).getRGB(200, 100)));
+        // the tile in the middle is dark up to pixel 500, the tile at 512 is white
+        assertFalse(isDark(image.getTile(row.get(1)).getRGB(250, 100)));
+        assertFalse(isDark(image.getTile(row.get(2)).getRGB(0, 100)));
+    }
+
+    @Test
+    void testNewRequestCancelsPendingOnes() {
+        image.request(image.tilesIn(0, new Rectangle(1000, 600)));
+        image.request(Collections.emptyList());
+        assertEquals(0, image.getPendingCount());
+    }
+
+    /**
+     * Checks whether a pixel is closer to black than to white
+     */
+    static boolean isDark(int rgb) {
+        return (rgb & 0xff) < 128;
+    }
+}